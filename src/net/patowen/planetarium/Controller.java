@@ -9,6 +9,7 @@ import com.jogamp.opengl.GLException;
 import com.jogamp.opengl.GLProfile;
 import com.jogamp.opengl.util.FPSAnimator;
 
+import net.patowen.planetarium.math.VsopCatalog;
 import net.patowen.planetarium.model.EclipseSpike;
 import net.patowen.planetarium.model.Planet;
 import net.patowen.planetarium.model.PlanetCubic;
@@ -31,6 +32,7 @@ public class Controller {
 	/** A renderable scene node */
 	public SceneNodeType starfield;
 	public SceneNodeType earth, moon, sun;
+	public SceneNodeType[] planets; // Indexed by VSOP2013 planet number, null if not available
 	public SceneNodeType eclipseSpike;
 	
 	/**
@@ -41,6 +43,16 @@ public class Controller {
 		earth = new PlanetCubic(ETexture.EARTH, 6378.1, 6356.8, false);
 		moon = new Planet(ETexture.MOON, 1738.1, 1736.0, false);
 		sun = new Planet(ETexture.BLANK, 6.957e5, 6.957e5, true);
+		
+		// Equatorial and polar radii of the planets other than Earth
+		double[][] planetRadii = {null, {2440.53, 2438.26}, {6051.8, 6051.8}, null, {3396.19, 3376.20},
+				{71492, 66854}, {60268, 54364}, {25559, 24973}, {24764, 24341}, {1188.3, 1188.3}};
+		planets = new SceneNodeType[10];
+		for (int i=1; i<=9; i++) {
+			if (planetRadii[i] != null && VsopCatalog.isAvailable(i)) {
+				planets[i] = new Planet(ETexture.BLANK, planetRadii[i][0], planetRadii[i][1], false);
+			}
+		}
 		eclipseSpike = new EclipseSpike();
 	}
 	
@@ -53,6 +65,9 @@ public class Controller {
 		earth.renderInit(gl);
 		moon.renderInit(gl);
 		sun.renderInit(gl);
+		for (SceneNodeType planet : planets) {
+			if (planet != null) planet.renderInit(gl);
+		}
 		eclipseSpike.renderInit(gl);
 	}
 	
@@ -30,10 +30,10 @@ public class InputHandler implements KeyListener, MouseListener {
 	public static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3, SLOW = 4, TILT_LEFT = 5, TILT_RIGHT = 6,
 			SPAWN_1 = 7, SPAWN_2 = 8, SPAWN_3 = 9, SPAWN_4 = 10, SPAWN_5 = 19, SPAWN_6 = 20, NOCLIP = 11, JUMP = 12, RESET = 13, CLEAR = 14,
 			GROW = 15, SHRINK = 16, ZOOM_OUT = 17, ZOOM_IN = 18, ROTATION_LOCK = 21,
-			SCENE_1 = 22, SCENE_2 = 23; //Keyboard
+			SCENE_1 = 22, SCENE_2 = 23, WARP_FASTER = 24, WARP_SLOWER = 25, WARP_REVERSE = 26, WARP_PAUSE = 27; //Keyboard
 	
 	/** The number of keyboard controls */
-	public static final int NUM_KEYS = 24;
+	public static final int NUM_KEYS = 28;
 	
 	/** A mouse control */
 	public static final int FORWARDS = 0, BACKWARDS = 1; //Mouse
@@ -117,6 +117,10 @@ public class InputHandler implements KeyListener, MouseListener {
 		keyCode[21] = KeyEvent.VK_CONTROL;
 		keyCode[22] = KeyEvent.VK_F1;
 		keyCode[23] = KeyEvent.VK_F2;
+		keyCode[24] = KeyEvent.VK_PERIOD;
+		keyCode[25] = KeyEvent.VK_COMMA;
+		keyCode[26] = KeyEvent.VK_SLASH;
+		keyCode[27] = KeyEvent.VK_T;
 		
 		mouseButton = new int[NUM_MOUSE_BUTTONS];
 		mouseButton[0] = MouseEvent.BUTTON1;
@@ -385,13 +389,13 @@ public class InputHandler implements KeyListener, MouseListener {
 		}
 	}
 	
-
+	
 	public void mouseEntered(MouseEvent e) {}
-
+	
 	public void mouseExited(MouseEvent e) {}
-
+	
 	public void mouseDragged(MouseEvent e) {}
-
+	
 	public void mouseMoved(MouseEvent e) {}
 	
 	public void mouseWheelMoved(MouseEvent e) {}
@@ -13,10 +13,18 @@ import com.jogamp.opengl.GLEventListener;
  * @author Patrick Owen
  */
 public class Renderer {
+	// The rate of the world's logic on the render thread, such as input and camera movement
+	private static final double STEP_RATE = 60;
+	private static final long STEP_PERIOD = (long)(1e9 / STEP_RATE);
+	private static final int MAX_CATCH_UP_STEPS = 5;
+	
 	private Controller c;
 	
 	private World world;
 	
+	private long lastFrameTime;
+	private long accumulator;
+	
 	public Renderer(Controller c) {
 		this.c = c;
 		
@@ -38,9 +46,9 @@ public class Renderer {
 		win.addGLEventListener(new GLEventListener() {
 			private Controller c = Renderer.this.c;
 			
-			//Performs a single frame of the render loop, also updating the physics of the world
+			//Performs a single frame of the render loop, first catching up the world's logic
 			public void display(GLAutoDrawable drawable) {
-				step(1.0/60);
+				advance();
 				render(drawable.getGL().getGL3());
 			}
 			
@@ -77,6 +85,26 @@ public class Renderer {
 	public void initialize() {
 		c.createInputHandler();
 		world = new World(c);
+		lastFrameTime = System.nanoTime();
+		accumulator = 0;
+	}
+	
+	/**
+	 * Takes as many fixed steps as fit in the time since the last frame. Leftover time carries
+	 * over to the next frame, so the logic runs at the same rate whatever the frame rate.
+	 */
+	public void advance() {
+		long now = System.nanoTime();
+		accumulator += now - lastFrameTime;
+		lastFrameTime = now;
+		if (accumulator > STEP_PERIOD * MAX_CATCH_UP_STEPS) {
+			accumulator = STEP_PERIOD * MAX_CATCH_UP_STEPS;
+		}
+		
+		while (accumulator >= STEP_PERIOD) {
+			step(1 / STEP_RATE);
+			accumulator -= STEP_PERIOD;
+		}
 	}
 	
 	/**
@@ -95,6 +123,6 @@ public class Renderer {
 		gl.glClear(GL3.GL_COLOR_BUFFER_BIT | GL3.GL_DEPTH_BUFFER_BIT);
 		c.getRenderContext().getShaderUniformHandler().reset();
 		
-		world.render(gl, c.getRenderContext());
+		world.render(gl, c.getRenderContext(), (double)accumulator / STEP_PERIOD);
 	}
 }
@@ -0,0 +1,111 @@
+package net.patowen.planetarium;
+
+import net.patowen.planetarium.entity.SolarSystem;
+
+/**
+ * Steps the solar system on its own thread, so that the cost of evaluating ephemerides does not
+ * hold up rendering. Steps are a fixed length, and an accumulator of elapsed time decides how
+ * many to take, so the simulation keeps pace with the clock whatever the rate. Each step
+ * publishes a snapshot of the bodies, and the renderer draws between the last two, so the rate
+ * can be far below the display's without visible stutter.
+ * @author Patrick Owen
+ */
+public class Simulator implements Runnable {
+	// If the simulation falls further behind than this, the missed time is dropped
+	private static final int MAX_CATCH_UP_STEPS = 5;
+	
+	private SolarSystem solarSystem;
+	private volatile double rate;
+	
+	private Thread thread;
+	private volatile boolean running;
+	
+	/**
+	 * Initializes the {@code Simulator} without starting it
+	 * @param solarSystem the solar system to step
+	 * @param rate the number of steps per second
+	 */
+	public Simulator(SolarSystem solarSystem, double rate) {
+		this.solarSystem = solarSystem;
+		setRate(rate);
+	}
+	
+	/**
+	 * Changes the number of steps per second, which takes effect on the next step
+	 * @param rate the number of steps per second
+	 */
+	public void setRate(double rate) {
+		if (!(rate > 0)) {
+			throw new IllegalArgumentException("Rate must be positive: " + rate);
+		}
+		this.rate = rate;
+	}
+	
+	public double getRate() {
+		return rate;
+	}
+	
+	/**
+	 * Starts stepping on a new daemon thread
+	 */
+	public void start() {
+		if (thread != null) {
+			throw new IllegalStateException("The simulator has already been started");
+		}
+		
+		running = true;
+		thread = new Thread(this, "Simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Stops stepping and waits for the current step to finish, after which the solar system
+	 * can safely be discarded or touched by the caller
+	 */
+	public void stop() {
+		if (thread == null) return;
+		
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+	
+	public void run() {
+		long lastTime = System.nanoTime();
+		long accumulator = 0;
+		
+		while (running) {
+			double dt = 1 / rate;
+			long period = (long)(dt * 1e9);
+			
+			long now = System.nanoTime();
+			accumulator += now - lastTime;
+			lastTime = now;
+			if (accumulator > period * MAX_CATCH_UP_STEPS) {
+				accumulator = period * MAX_CATCH_UP_STEPS;
+			}
+			
+			// Each step is stamped with the time it became due, which is what the renderer
+			// interpolates by
+			while (accumulator >= period && running) {
+				accumulator -= period;
+				solarSystem.step(dt, now - accumulator);
+			}
+			
+			long wait = period - accumulator - (System.nanoTime() - now);
+			if (wait > 0) {
+				try {
+					Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+}
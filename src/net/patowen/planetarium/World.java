@@ -6,6 +6,7 @@ import com.jogamp.opengl.GL3;
 
 import net.patowen.planetarium.entity.Player;
 import net.patowen.planetarium.entity.SolarSystem;
+import net.patowen.planetarium.entity.TimeControl;
 import net.patowen.planetarium.math.Transform;
 import net.patowen.planetarium.math.Vector3;
 import net.patowen.planetarium.rendering.SceneNode;
@@ -24,9 +25,16 @@ public class World {
 	private ArrayList<SceneNode> cameraAttachedNodes; //List of rendered nodes attached to the camera
 	private Player player; //Controllable camera
 	private SolarSystem solarSystem;
+	private Simulator simulator; //Steps the solar system on its own thread
+	private double simulationRate;
 	
 	private int viewportWidth, viewportHeight;
 	
+	// Reused every frame
+	private Transform anchor, cameraOffset;
+	private Vector3 sunPosition;
+	private float[] lightAmbient, lightDiffuse;
+	
 	/**
 	 * Initializes the world and its {@code Player} object
 	 * @param c
@@ -36,6 +44,12 @@ public class World {
 		
 		nodes = new ArrayList<>();
 		cameraAttachedNodes = new ArrayList<>();
+		anchor = new Transform();
+		cameraOffset = new Transform();
+		sunPosition = new Vector3(0, 0, 0);
+		lightAmbient = new float[] {0.01f, 0.01f, 0.01f};
+		lightDiffuse = new float[] {0.9f, 0.9f, 0.9f};
+		simulationRate = 10;
 		reset();
 	}
 	
@@ -53,15 +67,29 @@ public class World {
 	 * Resets the world to how it was before it was initialized
 	 */
 	public void reset() {
+		if (simulator != null) simulator.stop();
+		
 		nodes.clear();
 		player = new Player(c, this);
 		solarSystem = new SolarSystem(c, this);
+		simulator = new Simulator(solarSystem, simulationRate);
+		simulator.start();
 		SceneNode starfield = new SceneNode(c.starfield);
 		starfield.setTransformation(Transform.rotation(new Vector3(1, 0, 0), -23.4392811 * Math.PI / 180)
 				.transform(Transform.rotation(new Vector3(0, 0, 1), Math.PI)));
 		cameraAttachedNodes.add(starfield);
 	}
 	
+	/**
+	 * Changes how many times per second the solar system is stepped. Rendering interpolates
+	 * between steps, so low rates still move smoothly but cost less.
+	 * @param rate the number of steps per second
+	 */
+	public void setSimulationRate(double rate) {
+		simulator.setRate(rate);
+		simulationRate = rate;
+	}
+	
 	/**
 	 * Spawns the specified node into the scene
 	 * @param sceneNode the node to add
@@ -75,43 +103,61 @@ public class World {
 	}
 	
 	/**
-	 * Handles a step of the world's logic
+	 * Handles a step of the world's logic that belongs on the render thread, such as input.
+	 * The solar system is stepped separately by the {@code Simulator}.
 	 * @param dt the time step in seconds
 	 */
 	public void step(double dt) {
 		InputHandler inputHandler = c.getInputHandler();
 		player.step(dt);
-		solarSystem.step(dt);
 		
 		if (inputHandler.getKeyPressed(InputHandler.RESET))
 			reset();
 		if (inputHandler.getKeyPressed(InputHandler.CLEAR))
 			nodes.clear();
 		
+		TimeControl timeControl = solarSystem.getTimeControl();
+		if (inputHandler.getKeyPressed(InputHandler.WARP_FASTER))
+			timeControl.faster();
+		if (inputHandler.getKeyPressed(InputHandler.WARP_SLOWER))
+			timeControl.slower();
+		if (inputHandler.getKeyPressed(InputHandler.WARP_REVERSE))
+			timeControl.reverse();
+		if (inputHandler.getKeyPressed(InputHandler.WARP_PAUSE))
+			timeControl.togglePause();
+		
 		inputHandler.updatePressed();
 	}
 	
 	/**
 	 * Renders a single frame of the world
 	 * @param gl
+	 * @param alpha how far the frame is between the last two steps of the world's logic
 	 */
-	public void render(GL3 gl, RenderContext sh) {
-		player.setPerspective((float)viewportWidth/viewportHeight);
+	public void render(GL3 gl, RenderContext sh, double alpha) {
+		solarSystem.beginFrame(System.nanoTime());
+		player.setPerspective(viewportWidth, viewportHeight);
 		
 		ShaderUniformHandler suh = sh.getShaderUniformHandler();
-		suh.setLightAmbient(new float[] {0.01f, 0.01f, 0.01f});
-		suh.setLightDiffuse(0, new float[] {0.9f, 0.9f, 0.9f});
+		suh.setLightAmbient(lightAmbient);
+		suh.setLightDiffuse(0, lightDiffuse);
 		
-		player.setView();
-		suh.addTransformation(solarSystem.getAnchor());
+		player.setView(alpha);
+		solarSystem.getAnchor(anchor);
+		suh.addTransformation(anchor);
 		
-		suh.setLightPosition(0, new Vector3(0, 0, 0));
+		suh.setLightPosition(0, sunPosition);
 		
 		gl.glDisable(GL3.GL_DEPTH_TEST);
 		
+		// Undo the anchor and move to the camera
+		cameraOffset.setIdentity();
+		player.getViewPosition(cameraOffset.w);
+		cameraOffset.w.subtractInPlace(anchor.w);
+		
 		for (SceneNode node : cameraAttachedNodes) {
 			suh.pushTransformation();
-			suh.addTransformation(Transform.translation(solarSystem.getAnchor().w.times(-1).plus(player.getPosition())));
+			suh.addTransformation(cameraOffset);
 			node.render(gl, sh);
 			suh.popTransformation();
 		}
@@ -9,19 +9,32 @@ import net.patowen.planetarium.rendering.RenderContext;
 
 public class Body extends BodySystem {
 	private SceneNodeType renderInfo;
-	private Rotation rotation;
+	private Rotation rotation; // Only used by the renderer
+	private Transform renderTransform; // Only used by the renderer
+	private int level; // The level of detail last drawn, kept for its hysteresis
 	
 	public Body(SceneNodeType renderInfo, double garam, Rotation rotation) {
 		super(garam);
 		this.renderInfo = renderInfo;
 		this.rotation = rotation;
+		renderTransform = new Transform();
+		level = -1;
 	}
 	
+	/**
+	 * Draws the body, with its rotation evaluated at the time the renderer is drawing. Rotations
+	 * are not interpolated between simulation steps, since a fast time warp can turn a body
+	 * most of the way around in one step.
+	 */
 	public void render(GL3 gl, RenderContext context) {
-		renderInfo.render(gl, context, Transform.translation(getAbsolutePosition()).transform(rotation.getTransform()));
+		rotation.setParametersFromTime(store.getTime());
+		rotation.getTransform(renderTransform);
+		store.getAbsolutePosition(index, renderTransform.w);
+		level = renderInfo.render(gl, context, renderTransform, level);
 	}
 	
 	public void updateFromTime(double time) {
-		rotation.setParametersFromTime(time);
+		// The position is set by the satellite holding this body, and the rotation is only
+		// needed by the renderer
 	}
 }
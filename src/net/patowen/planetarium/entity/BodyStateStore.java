@@ -0,0 +1,236 @@
+package net.patowen.planetarium.entity;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.patowen.planetarium.math.Vector3;
+
+/**
+ * Holds the positions and velocities of every body in a hierarchy as columns of primitives.
+ * Each body stores its state relative to its parent, and {@code resolve} computes all of the
+ * absolute states in one pass. Bodies are added after their parents, so a parent's absolute
+ * state is always ready before its children need it. Index 0 is the origin, which every
+ * top-level body uses as its parent, so the pass needs no special case for them.
+ * <p>
+ * The simulation and the renderer can run on different threads. The relative states are only
+ * touched by the simulation, and each {@code resolve} publishes the absolute states as a
+ * {@link Snapshot} through a single atomic reference. The renderer takes the latest snapshot
+ * with {@code acquire} and keeps the one before it, so that it can draw the bodies between
+ * the two. The other two snapshots let the simulation keep publishing while the renderer holds
+ * its pair, so neither side waits for the other.
+ * @author Patrick Owen
+ */
+public class BodyStateStore {
+	public static final int ORIGIN = 0;
+	
+	private int count;
+	private int[] parent;
+	
+	// Indexed by component (x, y, z, vx, vy, vz) and then by body
+	private double[][] relative;
+	
+	private Snapshot back; // Owned by the simulation
+	private AtomicReference<Snapshot> latest; // Owned by whichever side takes it next
+	private Snapshot front, previous; // Owned by the renderer
+	
+	// How far the renderer is from the previous snapshot to the front one
+	private double fraction;
+	
+	/**
+	 * The absolute states of every body at one time. A snapshot does not change while the
+	 * renderer holds it.
+	 */
+	public static class Snapshot {
+		private double time;
+		private long stamp;
+		private boolean ready;
+		private volatile boolean fresh;
+		private double[][] absolute;
+		
+		private Snapshot(int capacity) {
+			absolute = new double[6][capacity];
+		}
+		
+		private void ensureCapacity(int capacity) {
+			if (absolute[0].length >= capacity) return;
+			for (int c=0; c<6; c++) absolute[c] = Arrays.copyOf(absolute[c], capacity);
+		}
+		
+		/**
+		 * @return the simulation time of the snapshot in seconds since J2000
+		 */
+		public double getTime() {
+			return time;
+		}
+		
+		/**
+		 * @return the {@code System.nanoTime} the snapshot is meant to be shown at
+		 */
+		public long getStamp() {
+			return stamp;
+		}
+		
+		public void getAbsolutePosition(int body, Vector3 result) {
+			result.set(absolute[0][body], absolute[1][body], absolute[2][body]);
+		}
+		
+		public void getAbsoluteVelocity(int body, Vector3 result) {
+			result.set(absolute[3][body], absolute[4][body], absolute[5][body]);
+		}
+	}
+	
+	public BodyStateStore() {
+		parent = new int[16];
+		relative = new double[6][16];
+		count = 1;
+		
+		back = new Snapshot(16);
+		latest = new AtomicReference<>(new Snapshot(16));
+		front = new Snapshot(16);
+		previous = new Snapshot(16);
+		
+		fraction = 1;
+	}
+	
+	/**
+	 * Adds a body at rest relative to its parent
+	 * @param parentIndex the index of the parent, or {@code ORIGIN} for a top-level body
+	 * @return the index of the new body
+	 */
+	public int add(int parentIndex) {
+		if (parentIndex < 0 || parentIndex >= count) {
+			throw new IllegalArgumentException("Parent " + parentIndex + " must be added before its children");
+		}
+		
+		if (count == parent.length) {
+			int capacity = count * 2;
+			parent = Arrays.copyOf(parent, capacity);
+			for (int c=0; c<6; c++) relative[c] = Arrays.copyOf(relative[c], capacity);
+		}
+		
+		parent[count] = parentIndex;
+		return count++;
+	}
+	
+	/**
+	 * @return the number of bodies, including the origin
+	 */
+	public int size() {
+		return count;
+	}
+	
+	public void setRelativePosition(int body, Vector3 position) {
+		relative[0][body] = position.x;
+		relative[1][body] = position.y;
+		relative[2][body] = position.z;
+	}
+	
+	/**
+	 * Sets the position and velocity relative to the parent to the sum of two states
+	 * @param body the index of the body
+	 * @param state a position and then a velocity
+	 * @param offset another position and velocity to add to the first
+	 */
+	public void setRelativeState(int body, double[] state, double[] offset) {
+		for (int c=0; c<6; c++) {
+			relative[c][body] = state[c] + offset[c];
+		}
+	}
+	
+	/**
+	 * Computes the absolute state of every body from the relative states and publishes
+	 * the result for the renderer
+	 * @param time the simulation time of the states
+	 * @param stamp the {@code System.nanoTime} the states should be shown at
+	 */
+	public void resolve(double time, long stamp) {
+		back.ensureCapacity(count);
+		for (int c=0; c<6; c++) {
+			double[] rel = relative[c], abs = back.absolute[c];
+			abs[ORIGIN] = 0;
+			for (int i=1; i<count; i++) {
+				abs[i] = rel[i] + abs[parent[i]];
+			}
+		}
+		back.time = time;
+		back.stamp = stamp;
+		back.ready = true;
+		back.fresh = true;
+		back = latest.getAndSet(back);
+	}
+	
+	/**
+	 * Switches the renderer to the most recently published snapshot, if there is a new one,
+	 * and chooses how far between it and the one before it to draw the bodies. The renderer
+	 * stays one step behind the simulation, so that it always has a later state to move
+	 * toward. This should be called by the renderer once at the start of each frame.
+	 * @param now the current {@code System.nanoTime}
+	 */
+	public void acquire(long now) {
+		if (latest.get().fresh) {
+			Snapshot old = previous;
+			old.fresh = false;
+			previous = front;
+			front = latest.getAndSet(old);
+		}
+		
+		// Bodies added before the first publication still need room in the initial snapshots
+		front.ensureCapacity(count);
+		previous.ensureCapacity(count);
+		
+		long interval = front.stamp - previous.stamp;
+		if (!previous.ready || interval <= 0) {
+			fraction = 1;
+		} else {
+			fraction = Math.min(1, Math.max(0, (double)(now - front.stamp) / interval));
+		}
+	}
+	
+	/**
+	 * @return the snapshot the renderer most recently acquired
+	 */
+	public Snapshot getSnapshot() {
+		return front;
+	}
+	
+	/**
+	 * @return the simulation time the renderer is drawing, between the last two snapshots
+	 */
+	public double getTime() {
+		return previous.time + (front.time - previous.time) * fraction;
+	}
+	
+	/**
+	 * Stores the position of the body at the time the renderer is drawing. Positions are
+	 * interpolated with cubic Hermite polynomials using the velocities at both snapshots,
+	 * which keeps curved orbits smooth even when the simulation steps slowly.
+	 * @param body the index of the body
+	 * @param result the vector to store the position in
+	 */
+	public void getAbsolutePosition(int body, Vector3 result) {
+		double t = fraction, dt = front.time - previous.time;
+		double t2 = t*t, t3 = t2*t;
+		double h00 = 2*t3 - 3*t2 + 1, h10 = (t3 - 2*t2 + t) * dt;
+		double h01 = -2*t3 + 3*t2, h11 = (t3 - t2) * dt;
+		
+		double[][] a = previous.absolute, b = front.absolute;
+		result.set(
+				h00*a[0][body] + h10*a[3][body] + h01*b[0][body] + h11*b[3][body],
+				h00*a[1][body] + h10*a[4][body] + h01*b[1][body] + h11*b[4][body],
+				h00*a[2][body] + h10*a[5][body] + h01*b[2][body] + h11*b[5][body]);
+	}
+	
+	/**
+	 * Stores the velocity of the body at the time the renderer is drawing, interpolated linearly
+	 * @param body the index of the body
+	 * @param result the vector to store the velocity in
+	 */
+	public void getAbsoluteVelocity(int body, Vector3 result) {
+		double t = fraction;
+		double[][] a = previous.absolute, b = front.absolute;
+		result.set(
+				a[3][body] + (b[3][body]-a[3][body])*t,
+				a[4][body] + (b[4][body]-a[4][body])*t,
+				a[5][body] + (b[5][body]-a[5][body])*t);
+	}
+}
@@ -10,20 +10,36 @@ import net.patowen.planetarium.rendering.RenderContext;
 public abstract class BodySystem {
 	protected double garam;
 	
-	private BodySystem parentBodySystem;
 	private ArrayList<BodySystem> childBodySystems;
-	private Vector3 relativePosition;
+	
+	// Where the state of this system is kept, once the hierarchy is attached to a store
+	protected BodyStateStore store;
+	protected int index;
 	
 	public BodySystem(double garam) {
 		this.garam = garam;
-		parentBodySystem = null;
 		childBodySystems = new ArrayList<>();
-		relativePosition = new Vector3();
 	}
 	
 	protected void addChild(BodySystem childBodySystem) {
 		childBodySystems.add(childBodySystem);
-		childBodySystem.parentBodySystem = this;
+	}
+	
+	/**
+	 * Adds this system and everything in it to the store, parents first. This should be
+	 * called on the top-level system once the hierarchy is complete.
+	 * @param store the store to keep the states of the bodies in
+	 */
+	public void attach(BodyStateStore store) {
+		attach(store, BodyStateStore.ORIGIN);
+	}
+	
+	private void attach(BodyStateStore store, int parentIndex) {
+		this.store = store;
+		index = store.add(parentIndex);
+		for (BodySystem child : childBodySystems) {
+			child.attach(store, index);
+		}
 	}
 	
 	public abstract void updateFromTime(double time);
@@ -34,14 +50,34 @@ public abstract class BodySystem {
 	}
 	
 	public void setRelativePosition(Vector3 position) {
-		relativePosition = position;
+		store.setRelativePosition(index, position);
+	}
+	
+	/**
+	 * Sets the position and velocity relative to the parent to the sum of the arguments
+	 * @param state a position and then a velocity
+	 * @param offset another position and velocity to add
+	 */
+	public void setRelativeState(double[] state, double[] offset) {
+		store.setRelativeState(index, state, offset);
 	}
 	
 	public Vector3 getAbsolutePosition() {
-		if (parentBodySystem == null) {
-			return relativePosition;
-		} else {
-			return relativePosition.plus(parentBodySystem.getAbsolutePosition());
-		}
+		Vector3 result = new Vector3();
+		getAbsolutePosition(result);
+		return result;
+	}
+	
+	/**
+	 * Stores the position relative to the root of the hierarchy, at the time the renderer
+	 * is drawing, in an existing vector
+	 * @param result the vector to store the position in
+	 */
+	public void getAbsolutePosition(Vector3 result) {
+		store.getAbsolutePosition(index, result);
+	}
+	
+	public void getAbsoluteVelocity(Vector3 result) {
+		store.getAbsoluteVelocity(index, result);
 	}
 }
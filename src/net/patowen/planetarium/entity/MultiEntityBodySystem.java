@@ -1,23 +1,31 @@
 package net.patowen.planetarium.entity;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 import com.jogamp.opengl.GL3;
 
 import net.patowen.planetarium.math.Orbit;
-import net.patowen.planetarium.math.Vector3;
 import net.patowen.planetarium.rendering.RenderContext;
 
 public class MultiEntityBodySystem extends BodySystem {
+	// Updating a satellite from a Chebyshev ephemeris takes a few microseconds, while handing
+	// work to the common pool and waking its threads costs tens of microseconds, so smaller
+	// systems are faster on one thread
+	private static final int PARALLEL_THRESHOLD = 32;
+	
 	private BodySystem mainBody;
 	private ArrayList<Satellite> satellites;
-	private Vector3 mainBodyDisplacement;
+	private double[] mainBodyDisplacement;
+	private boolean parallel;
 	
 	public MultiEntityBodySystem(BodySystem mainBody) {
 		super(mainBody.garam);
 		this.mainBody = mainBody;
 		addChild(mainBody);
 		satellites = new ArrayList<>();
+		mainBodyDisplacement = new double[6];
 	}
 	
 	public void addSatellite(BodySystem satellite, Orbit orbit) {
@@ -27,24 +35,47 @@ public class MultiEntityBodySystem extends BodySystem {
 		addChild(satellite);
 	}
 	
+	/**
+	 * Chooses whether the orbits of the satellites may be evaluated on separate threads, which
+	 * only happens once there are at least {@code PARALLEL_THRESHOLD} satellites. Each
+	 * satellite only touches its own orbit, ephemeris, and subsystem, so the satellites can be
+	 * updated independently. The displacements of the main body are still added in order
+	 * afterwards, so the result is the same either way. Satellites are updated in sequence
+	 * by default.
+	 * @param parallel whether to update the satellites in parallel
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
 	public void updateFromTime(double time) {
-		mainBodyDisplacement = new Vector3();
+		Arrays.fill(mainBodyDisplacement, 0);
 		mainBody.updateFromTime(time);
 		
-		for (Satellite satellite : satellites) {
-			satellite.updateFromTime(time);
-			mainBodyDisplacement = mainBodyDisplacement.plus(satellite.getMainBodyDisplacement());
+		if (parallel && satellites.size() >= PARALLEL_THRESHOLD) {
+			IntStream.range(0, satellites.size()).parallel().forEach(i -> satellites.get(i).updateFromTime(time));
+		} else {
+			for (int i=0; i<satellites.size(); i++) {
+				satellites.get(i).updateFromTime(time);
+			}
+		}
+		
+		for (int i=0; i<satellites.size(); i++) {
+			double[] displacement = satellites.get(i).getMainBodyDisplacement();
+			for (int j=0; j<6; j++) {
+				mainBodyDisplacement[j] += displacement[j];
+			}
 		}
 		
-		for (Satellite satellite : satellites) {
-			satellite.updateRelativePosition(mainBodyDisplacement);
+		for (int i=0; i<satellites.size(); i++) {
+			satellites.get(i).updateRelativePosition(mainBodyDisplacement);
 		}
 	}
 	
 	public void render(GL3 gl, RenderContext context) {
 		mainBody.render(gl, context);
-		for (Satellite satellite : satellites) {
-			satellite.render(gl, context);
+		for (int i=0; i<satellites.size(); i++) {
+			satellites.get(i).render(gl, context);
 		}
 	}
 }
@@ -20,6 +20,14 @@ public class Player {
 	private Transform pos;
 	private Vector3 vel;
 	
+	// The position before the last step, and the position drawn, which is between the two
+	private Transform previousPos, viewPos;
+	
+	// Scratch objects for each step, so that moving the camera does not allocate
+	private Vector3 goalVel;
+	private Transform turn, step, view;
+	private float[] perspective;
+	
 	private boolean noclip;
 	
 	//Perspective
@@ -38,6 +46,14 @@ public class Player {
 		pos = pos.transform(Transform.rotation(new Vector3(0, 1, 0), Math.PI/2));
 		pos = pos.transform(Transform.rotation(new Vector3(0, 0, 1), Math.PI/2));
 		vel = new Vector3();
+		previousPos = new Transform(pos);
+		viewPos = new Transform(pos);
+		
+		goalVel = new Vector3();
+		turn = new Transform();
+		step = new Transform();
+		view = new Transform();
+		perspective = new float[16];
 		
 		noclip = true;
 		
@@ -48,12 +64,26 @@ public class Player {
 		return new Vector3(pos.w);
 	}
 	
+	public void getPosition(Vector3 result) {
+		result.set(pos.w);
+	}
+	
+	/**
+	 * Stores the position the camera was drawn at by the last call to {@code setView}
+	 * @param result the vector to store the position in
+	 */
+	public void getViewPosition(Vector3 result) {
+		result.set(viewPos.w);
+	}
+	
 	/**
 	 * Moves the camera based on player input and exercises some control, such
 	 * as spawning structures
 	 * @param dt the time step in seconds
 	 */
 	public void step(double dt) {
+		previousPos.set(pos);
+		
 		handleTurning(dt);
 		handleAcceleration(dt);
 		
@@ -100,10 +130,10 @@ public class Player {
 			dx -= 1;
 		
 		if (noclip) {
-			Vector3 goalVel = new Vector3(maxVel*dx, maxVel*dy, maxVel*dz);
+			goalVel.set(maxVel*dx, maxVel*dy, maxVel*dz);
 			approachVelocity(goalVel, maxChange);
 		} else {
-			vel = vel.times(Math.exp(-0.2*dt)); //Air friction
+			vel.scaleInPlace(Math.exp(-0.2*dt)); //Air friction
 		}
 	}
 	
@@ -113,12 +143,13 @@ public class Player {
 	 * @param maxChange the maximum change allowed to be added to the current velocity
 	 */
 	private void approachVelocity(Vector3 goalVel, double maxChange) {
-		double dist = goalVel.minus(vel).magnitude();
+		double dist = goalVel.distance(vel);
 		if (dist <= maxChange) {
-			vel = goalVel;
+			vel.set(goalVel);
 		} else {
 			double progress = maxChange/dist;
-			vel = vel.times(1-progress).plus(goalVel.times(progress));
+			vel.scaleInPlace(1-progress);
+			vel.addMultipleInPlace(goalVel, progress);
 		}
 	}
 	
@@ -127,8 +158,9 @@ public class Player {
 	 * @param dt the time step
 	 */
 	private void handleMovement(double dt) {
-		Transform translation = Transform.translation(convertToPosition(vel, dt));
-		pos = pos.transform(translation);
+		step.setIdentity();
+		convertToPosition(vel, dt, step.w);
+		pos.setProduct(pos, step);
 		pos.normalize();
 	}
 	
@@ -145,17 +177,21 @@ public class Player {
 		
 		inputHandler.readMouse();
 		
-		Transform o = Transform.identity();
-		o = o.transformedBy(Transform.rotation(o.y, -inputHandler.getMouseX()*45*Math.atan(zoom)));
-		o = o.transformedBy(Transform.rotation(o.x, -inputHandler.getMouseY()*45*Math.atan(zoom)));
+		turn.setIdentity();
+		step.setRotation(turn.y, -inputHandler.getMouseX()*45*Math.atan(zoom));
+		turn.setProduct(step, turn);
+		step.setRotation(turn.x, -inputHandler.getMouseY()*45*Math.atan(zoom));
+		turn.setProduct(step, turn);
 		double tilt = 0;
 		if (inputHandler.getKey(InputHandler.TILT_LEFT))
 			tilt -= 1;
 		if (inputHandler.getKey(InputHandler.TILT_RIGHT))
 			tilt += 1;
-		o = o.transformedBy(Transform.rotation(o.z, -tilt*dt));
-		vel = o.inverse().transform(vel);
-		pos = pos.transform(o);
+		step.setRotation(turn.z, -tilt*dt);
+		turn.setProduct(step, turn);
+		step.setInverse(turn);
+		step.transformInPlace(vel);
+		pos.setProduct(pos, turn);
 	}
 	
 	/**
@@ -171,19 +207,27 @@ public class Player {
 	}
 	
 	/**
-	 * Sets the perspective matrix to the correct type based on player input
-	 * @param aspect Aspect ratio of the screen
+	 * Sets the perspective matrix to the correct type based on player input, along with the
+	 * matching scale used to choose levels of detail
+	 * @param width Width of the screen in pixels
+	 * @param height Height of the screen in pixels
 	 */
-	public void setPerspective(float aspect) {
-		float[] mat = new float[16];
-		c.getRenderContext().getShaderUniformHandler().setPerspective(FloatUtil.makePerspective(mat, 0, true, (float)(Math.atan(zoom)*2), aspect, 100f, 1e9f));
+	public void setPerspective(int width, int height) {
+		float aspect = (float)width/height;
+		c.getRenderContext().getShaderUniformHandler().setPerspective(FloatUtil.makePerspective(perspective, 0, true, (float)(Math.atan(zoom)*2), aspect, 100f, 1e9f));
+		
+		// The vertical field of view is 2*atan(zoom), so the screen's half-height is zoom units at a distance of one unit
+		c.getRenderContext().setProjectionScale(height / (2 * zoom));
 	}
 	
 	/**
 	 * Transforms the view such that the player is transformed to the origin facing the default direction
+	 * @param alpha how far between the previous step and the current one to place the camera
 	 */
-	public void setView() {
-		c.getRenderContext().getShaderUniformHandler().addTransformation(pos.inverse());
+	public void setView(double alpha) {
+		viewPos.setInterpolated(previousPos, pos, alpha);
+		view.setInverse(viewPos);
+		c.getRenderContext().getShaderUniformHandler().addTransformation(view);
 	}
 	
 	/**
@@ -191,9 +235,10 @@ public class Player {
 	 * velocity for the given amount of time.
 	 * @param vel the velocity to convert
 	 * @param dt the time in seconds
-	 * @return the resulting position
+	 * @param result the vector to store the resulting position in
 	 */
-	private Vector3 convertToPosition(Vector3 vel, double dt) {
-		return vel.times(dt);
+	private void convertToPosition(Vector3 vel, double dt, Vector3 result) {
+		result.set(vel);
+		result.scaleInPlace(dt);
 	}
 }
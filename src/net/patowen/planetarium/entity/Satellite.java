@@ -3,40 +3,46 @@ package net.patowen.planetarium.entity;
 import com.jogamp.opengl.GL3;
 
 import net.patowen.planetarium.math.Orbit;
-import net.patowen.planetarium.math.Vector3;
 import net.patowen.planetarium.rendering.RenderContext;
 
 public class Satellite {
 	private BodySystem bodySystem;
 	private BodySystem parentBodySystem;
 	private Orbit orbit;
-	private Vector3 position; // Relative to parent body
-	private Vector3 parentDisplacement;
+	private double[] state; // Relative to parent body
+	private double[] parentDisplacement;
 	
 	public Satellite(BodySystem bodySystem, BodySystem parentBodySystem, Orbit orbit) {
 		this.bodySystem = bodySystem;
 		this.parentBodySystem = parentBodySystem;
 		this.orbit = orbit;
 		orbit.setGaram(bodySystem.getGaram() + parentBodySystem.getGaram());
+		state = new double[6];
+		parentDisplacement = new double[6];
 	}
 	
 	public void updateFromTime(double time) {
 		orbit.setParametersFromTime(time);
-		Vector3 orbitPosition = orbit.getPosition(time);
-		position = orbitPosition;
-		parentDisplacement = orbitPosition.times(-bodySystem.getGaram() / (bodySystem.getGaram() + parentBodySystem.getGaram()));
+		orbit.getState(time, state);
+		double ratio = -bodySystem.getGaram() / (bodySystem.getGaram() + parentBodySystem.getGaram());
+		for (int i=0; i<6; i++) {
+			parentDisplacement[i] = state[i] * ratio;
+		}
 		bodySystem.updateFromTime(time);
 	}
 	
-	public void updateRelativePosition(Vector3 totalParentDisplacment) {
-		bodySystem.setRelativePosition(position.plus(totalParentDisplacment));
+	public void updateRelativePosition(double[] totalParentDisplacement) {
+		bodySystem.setRelativeState(state, totalParentDisplacement);
 	}
 	
 	public void render(GL3 gl, RenderContext context) {
 		bodySystem.render(gl, context);
 	}
 	
-	public Vector3 getMainBodyDisplacement() {
+	/**
+	 * @return the position and velocity this satellite's pull gives the main body
+	 */
+	public double[] getMainBodyDisplacement() {
 		return parentDisplacement;
 	}
 }
@@ -1,9 +1,13 @@
 package net.patowen.planetarium.entity;
 
+import java.util.stream.IntStream;
+
 import com.jogamp.opengl.GL3;
 
 import net.patowen.planetarium.Controller;
 import net.patowen.planetarium.World;
+import net.patowen.planetarium.math.ChebyshevEphemeris;
+import net.patowen.planetarium.math.LunarChebyshevEphemeris;
 import net.patowen.planetarium.math.LunarTheory;
 import net.patowen.planetarium.math.MathHelper;
 import net.patowen.planetarium.math.MoonOrbit;
@@ -11,11 +15,13 @@ import net.patowen.planetarium.math.PlanetOrbit;
 import net.patowen.planetarium.math.PlanetRotation;
 import net.patowen.planetarium.math.Transform;
 import net.patowen.planetarium.math.Vector3;
-import net.patowen.planetarium.math.Vsop;
+import net.patowen.planetarium.math.VsopCatalog;
 import net.patowen.planetarium.rendering.SceneNode;
 import net.patowen.planetarium.rendering.RenderContext;
 
 public class SolarSystem {
+	private static final Vector3 Z_AXIS = new Vector3(0, 0, 1);
+	
 	private Controller c;
 	private World w;
 	
@@ -24,13 +30,22 @@ public class SolarSystem {
 	private double moonParam = 4.9048696e3;
 	private Body sun, earth, moon;
 	
+	// Indexed by VSOP2013 planet number. The Earth-Moon barycenter is handled separately.
+	private double[] planetParams = {0, 2.2032e4, 3.24859e5, 0, 4.282837e4, 1.26686534e8,
+			3.7931187e7, 5.793939e6, 6.836529e6, 8.71e2};
+	
 	private SceneNode eclipseSpike;
+	private Transform eclipseTransform;
+	private Vector3 sunPosition, moonPosition;
 	
 	private MultiEntityBodySystem solarSystem;
+	private BodyStateStore bodyStates;
 	
 	private double time;
+	private double lastUpdateTime; // The time the bodies were last updated to, used by the simulation
+	private TimeControl timeControl;
 	
-	private Vsop vsop;
+	private VsopCatalog vsopCatalog;
 	private LunarTheory lunarTheory;
 	
 	public SolarSystem(Controller controller, World world) {
@@ -39,22 +54,40 @@ public class SolarSystem {
 		
 		eclipseSpike = new SceneNode(c.eclipseSpike);
 		w.addNode(eclipseSpike);
+		eclipseTransform = new Transform();
+		sunPosition = new Vector3();
+		moonPosition = new Vector3();
 		
 		lunarTheory = new LunarTheory();
 		lunarTheory.loadData();
-		lunarTheory.generateLunarSeries(1e-5);
+		lunarTheory.generateLunarSeries(0);
+		lunarTheory.setBlockEvaluation(true);
 		
-		vsop = new Vsop();
+		vsopCatalog = new VsopCatalog();
+		vsopCatalog.load(IntStream.rangeClosed(1, 9).filter(VsopCatalog::isAvailable).toArray());
 		
 		sun = new Body(c.sun, sunParam, PlanetRotation.getEarthRotation());
 		earth = new Body(c.earth, earthParam, PlanetRotation.getEarthRotation());
 		moon = new Body(c.moon, moonParam, PlanetRotation.getMoonRotation());
 		
 		MultiEntityBodySystem earthMoonSystem = new MultiEntityBodySystem(earth);
-		earthMoonSystem.addSatellite(moon, new MoonOrbit(lunarTheory));
+		// The full series are kept for exports, but the view only needs a cheaper tier
+		LunarChebyshevEphemeris lunarEphemeris = new LunarChebyshevEphemeris(lunarTheory);
+		lunarEphemeris.setPrecision(1e-5);
+		earthMoonSystem.addSatellite(moon, new MoonOrbit(lunarEphemeris));
 		
 		solarSystem = new MultiEntityBodySystem(sun);
-		solarSystem.addSatellite(earthMoonSystem, new PlanetOrbit(vsop));
+		solarSystem.addSatellite(earthMoonSystem, new PlanetOrbit(new ChebyshevEphemeris(
+				vsopCatalog.getPlanet(VsopCatalog.EARTH_MOON_BARYCENTER))));
+		
+		for (int planet=1; planet<=9; planet++) {
+			if (c.planets[planet] == null) continue;
+			Body body = new Body(c.planets[planet], planetParams[planet], PlanetRotation.getPlanetRotation(planet));
+			solarSystem.addSatellite(body, new PlanetOrbit(new ChebyshevEphemeris(vsopCatalog.getPlanet(planet))));
+		}
+		
+		bodyStates = new BodyStateStore();
+		solarSystem.attach(bodyStates);
 		
 		//time = 0;
 		//time = -12*3600 + (31+30+20)*86400;
@@ -63,24 +96,77 @@ public class SolarSystem {
 		/*time = -12*3600+(366+365+365+365+366+365+365+365+366+365+365+365+366+365+365+365+366
 				+31+28+31+30+31+30+31+20)*86400 + 15*3600 + 15*60;*/
 		time = MathHelper.getNumSeconds(2017, 11, 4, 12, 0, 0);
+		lastUpdateTime = Double.NaN;
+		timeControl = new TimeControl();
+		
+		// Publish the starting state so that the first frame has something to draw
+		step(0, System.nanoTime());
 	}
 	
 	public Transform getAnchor() {
-		return Transform.translation(earth.getAbsolutePosition().times(-1));
+		Transform anchor = new Transform();
+		getAnchor(anchor);
+		return anchor;
+	}
+	
+	/**
+	 * Stores the translation that moves the Earth to the origin in an existing {@code Transform},
+	 * as of the snapshot being rendered
+	 * @param result the transformation to store the anchor in
+	 */
+	public void getAnchor(Transform result) {
+		result.setIdentity();
+		earth.getAbsolutePosition(result.w);
+		result.w.scaleInPlace(-1);
+	}
+	
+	/**
+	 * Advances the simulation and publishes the new state of every body. This may run on a
+	 * different thread from rendering, so it must not touch anything the renderer reads
+	 * other than through {@code BodyStateStore}.
+	 * @param dt the time step in seconds
+	 * @param stamp the {@code System.nanoTime} the new state should be shown at
+	 */
+	public void step(double dt, long stamp) {
+		time += dt * timeControl.getRate();
+		
+		// The ephemerides share the VSOP arguments themselves when they need the series, and
+		// nothing moves while paused
+		if (time != lastUpdateTime) {
+			solarSystem.updateFromTime(time);
+			lastUpdateTime = time;
+		}
+		bodyStates.resolve(time, stamp);
+	}
+	
+	/**
+	 * @return the controls for how fast simulated time passes
+	 */
+	public TimeControl getTimeControl() {
+		return timeControl;
 	}
 	
-	public void step(double dt) {
-		time += dt*60*5;// + dt;
+	/**
+	 * Switches to the newest published state and updates the nodes that depend on it. This
+	 * should be called on the render thread before anything else in the solar system is rendered.
+	 * @param now the current {@code System.nanoTime}, which decides how far between the last
+	 * two states the bodies are drawn
+	 */
+	public void beginFrame(long now) {
+		bodyStates.acquire(now);
 		
-		solarSystem.updateFromTime(time);
+		moon.getAbsolutePosition(moonPosition);
+		sun.getAbsolutePosition(sunPosition);
 		
-		Vector3 moonRelLoc = moon.getAbsolutePosition().minus(sun.getAbsolutePosition());
-		Vector3 xx = new Vector3(moonRelLoc);
-		xx.normalize();
-		Vector3 yy = xx.cross(new Vector3(0, 0, 1));
-		yy.normalize();
-		Vector3 zz = xx.cross(yy);
-		eclipseSpike.setTransformation(Transform.translation(moon.getAbsolutePosition()).transform(new Transform(xx, yy, zz, new Vector3())));
+		// Point the spike directly away from the sun
+		eclipseTransform.x.set(moonPosition);
+		eclipseTransform.x.subtractInPlace(sunPosition);
+		eclipseTransform.x.normalize();
+		eclipseTransform.y.setCross(eclipseTransform.x, Z_AXIS);
+		eclipseTransform.y.normalize();
+		eclipseTransform.z.setCross(eclipseTransform.x, eclipseTransform.y);
+		eclipseTransform.w.set(moonPosition);
+		eclipseSpike.setTransformation(eclipseTransform);
 	}
 	
 	public void render(GL3 gl, RenderContext context) {
@@ -0,0 +1,64 @@
+package net.patowen.planetarium.entity;
+
+/**
+ * Decides how fast simulated time passes compared to real time. The warp factor moves along a
+ * fixed ladder of rates, from real time up to a year per second, and time can also be reversed
+ * or paused. The controls are changed from the render thread and read by the simulation, so
+ * every field is volatile.
+ * @author Patrick Owen
+ */
+public class TimeControl {
+	private static final double[] WARPS = {1, 10, 60, 300, 3600, 86400, 7 * 86400, 30 * 86400, 365.25 * 86400};
+	private static final int DEFAULT_WARP = 3;
+	
+	private volatile int warpIndex;
+	private volatile boolean reversed;
+	private volatile boolean paused;
+	
+	/**
+	 * Starts moving forwards at five minutes per second
+	 */
+	public TimeControl() {
+		warpIndex = DEFAULT_WARP;
+	}
+	
+	public void faster() {
+		warpIndex = Math.min(warpIndex + 1, WARPS.length - 1);
+	}
+	
+	public void slower() {
+		warpIndex = Math.max(warpIndex - 1, 0);
+	}
+	
+	public void reverse() {
+		reversed = !reversed;
+	}
+	
+	public void togglePause() {
+		paused = !paused;
+	}
+	
+	public boolean isReversed() {
+		return reversed;
+	}
+	
+	public boolean isPaused() {
+		return paused;
+	}
+	
+	/**
+	 * @return the number of simulated seconds per real second, ignoring direction and pausing
+	 */
+	public double getWarp() {
+		return WARPS[warpIndex];
+	}
+	
+	/**
+	 * @return the change in simulated time per real second, which is negative when
+	 * reversed and zero when paused
+	 */
+	public double getRate() {
+		if (paused) return 0;
+		return reversed ? -WARPS[warpIndex] : WARPS[warpIndex];
+	}
+}
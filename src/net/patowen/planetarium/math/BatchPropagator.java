@@ -0,0 +1,60 @@
+package net.patowen.planetarium.math;
+
+/**
+ * Computes the states of many orbits of any type at once. The elliptic orbits are gathered
+ * so that Kepler's equation is solved for all of them together with {@link KeplerSolver}, and
+ * the rest are propagated one at a time. Scratch storage only grows when more orbits are
+ * given than before, so evaluating the same orbits every frame does not allocate.
+ * @author Patrick Owen
+ */
+public class BatchPropagator {
+	private final KeplerSolver solver;
+	
+	private int[] ellipticIndex;
+	private double[] meanAnomaly, eccentricity, eccentricAnomaly;
+	
+	public BatchPropagator() {
+		solver = new KeplerSolver();
+		ensureCapacity(64);
+	}
+	
+	private void ensureCapacity(int count) {
+		if (ellipticIndex != null && ellipticIndex.length >= count) return;
+		int capacity = Math.max(count, ellipticIndex == null ? 0 : ellipticIndex.length * 2);
+		ellipticIndex = new int[capacity];
+		meanAnomaly = new double[capacity];
+		eccentricity = new double[capacity];
+		eccentricAnomaly = new double[capacity];
+	}
+	
+	/**
+	 * @param orbits the orbits to evaluate
+	 * @param count the number of orbits to evaluate, from the start of the array
+	 * @param time the time in seconds since J2000
+	 * @param states the array to store the results in, six values per orbit: the position and then the velocity
+	 */
+	public void getStates(Orbit[] orbits, int count, double time, double[] states) {
+		ensureCapacity(count);
+		
+		int numElliptic = 0;
+		for (int i=0; i<count; i++) {
+			OrbitPropagator propagator = orbits[i].getPropagator();
+			if (propagator instanceof EllipticPropagator) {
+				EllipticPropagator elliptic = (EllipticPropagator)propagator;
+				ellipticIndex[numElliptic] = i;
+				meanAnomaly[numElliptic] = elliptic.getMeanAnomaly(time);
+				eccentricity[numElliptic] = elliptic.getEccentricity();
+				numElliptic++;
+			} else {
+				propagator.getState(time, states, i*6);
+			}
+		}
+		
+		solver.solve(meanAnomaly, eccentricity, eccentricAnomaly, numElliptic);
+		
+		for (int j=0; j<numElliptic; j++) {
+			int i = ellipticIndex[j];
+			((EllipticPropagator)orbits[i].getPropagator()).getStateFromEccentricAnomaly(eccentricAnomaly[j], states, i*6);
+		}
+	}
+}
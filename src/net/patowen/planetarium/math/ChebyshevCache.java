@@ -0,0 +1,181 @@
+package net.patowen.planetarium.math;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds the Chebyshev segments fitted to one source in a ring buffer indexed by segment, and
+ * fits the segments ahead of the requested time on background threads. The distance ahead
+ * grows with how far time moves between requests, so fast time warps still find their segments
+ * ready, and reversing time finds the segments just behind it still in the ring.
+ * <p>
+ * Each cache should be read by one thread at a time. The background threads are shared by
+ * every cache and exit when idle.
+ * @author Patrick Owen
+ */
+public class ChebyshevCache {
+	// How many requests ahead, at the current spacing, segments are prepared for
+	private static final int PREFETCH_REQUESTS = 32;
+	
+	private static final ThreadPoolExecutor prefetcher;
+	
+	static {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		prefetcher = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread thread = new Thread(r, "Ephemeris prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		prefetcher.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * A fitted segment, or a record that the segment could not be fitted
+	 */
+	private static class Entry {
+		final long index;
+		final int generation;
+		final ChebyshevSegment segment; // Null if the segment could not be fitted
+		
+		Entry(long index, int generation, ChebyshevSegment segment) {
+			this.index = index;
+			this.generation = generation;
+			this.segment = segment;
+		}
+	}
+	
+	private ChebyshevSegment.Source source;
+	private int dimension;
+	private double span;
+	private int degree, maxDegree;
+	private double tolerance;
+	private int minLookahead;
+	
+	private AtomicReferenceArray<Entry> ring;
+	private Set<Long> pending;
+	private volatile int generation; // Incremented by clear while locked, so stale fits are dropped
+	private volatile long currentIndex;
+	
+	private double lastTime;
+	
+	/**
+	 * @param source the function to approximate
+	 * @param dimension the number of components of the function
+	 * @param span the length of each segment
+	 * @param degree the initial degree of the polynomials
+	 * @param maxDegree the largest degree to try
+	 * @param tolerance the largest allowed absolute error of any component
+	 * @param capacity the number of segments to keep, which also limits how far ahead to fit
+	 * @param minLookahead the number of segments to prepare ahead even when time moves slowly
+	 */
+	public ChebyshevCache(ChebyshevSegment.Source source, int dimension, double span, int degree, int maxDegree,
+			double tolerance, int capacity, int minLookahead) {
+		if (capacity < 3) {
+			throw new IllegalArgumentException("Capacity must be at least 3: " + capacity);
+		}
+		
+		this.source = source;
+		this.dimension = dimension;
+		this.span = span;
+		this.degree = degree;
+		this.maxDegree = maxDegree;
+		this.tolerance = tolerance;
+		this.minLookahead = Math.min(minLookahead, capacity - 2);
+		
+		ring = new AtomicReferenceArray<>(capacity);
+		pending = ConcurrentHashMap.newKeySet();
+		lastTime = Double.NaN;
+	}
+	
+	/**
+	 * Discards all fitted segments, including those being fitted in the background, such as
+	 * after the source has changed
+	 */
+	public synchronized void clear() {
+		generation++;
+		for (int i=0; i<ring.length(); i++) {
+			ring.set(i, null);
+		}
+	}
+	
+	/**
+	 * Returns the segment covering the given time, fitting it first if it has not been
+	 * prepared, and schedules the segments after it in the direction time is moving
+	 * @param t the time
+	 * @return the segment, or null if the tolerance could not be met
+	 */
+	public ChebyshevSegment get(double t) {
+		long index = (long)Math.floor(t / span);
+		currentIndex = index;
+		
+		Entry entry = lookup(index);
+		if (entry == null) {
+			entry = fit(index);
+		}
+		
+		if (!Double.isNaN(lastTime) && t != lastTime) {
+			prefetch(index, t - lastTime);
+		}
+		lastTime = t;
+		
+		return entry.segment;
+	}
+	
+	private Entry lookup(long index) {
+		Entry entry = ring.get(slot(index));
+		if (entry == null || entry.index != index || entry.generation != generation) {
+			return null;
+		}
+		return entry;
+	}
+	
+	private int slot(long index) {
+		return (int)Math.floorMod(index, (long)ring.length());
+	}
+	
+	private Entry fit(long index) {
+		int fitGeneration = generation;
+		ChebyshevSegment segment = ChebyshevSegment.fit(source, index * span, span, dimension, degree, maxDegree, tolerance);
+		Entry entry = new Entry(index, fitGeneration, segment);
+		synchronized (this) {
+			if (fitGeneration == generation) {
+				ring.set(slot(index), entry);
+			}
+		}
+		return entry;
+	}
+	
+	/**
+	 * Schedules the segments after the given one, far enough ahead to cover the next
+	 * {@code PREFETCH_REQUESTS} requests if they keep the same spacing
+	 * @param index the segment just requested
+	 * @param step the change in time since the previous request
+	 */
+	private void prefetch(long index, double step) {
+		int direction = step < 0 ? -1 : 1;
+		
+		// The current segment and the one behind it keep their slots
+		double ahead = Math.ceil(Math.abs(step) * PREFETCH_REQUESTS / span);
+		int count = (int)Math.min(ring.length() - 2, Math.max(minLookahead, ahead));
+		
+		for (int i=1; i<=count; i++) {
+			final long next = index + i * direction;
+			if (lookup(next) != null || !pending.add(next)) continue;
+			
+			prefetcher.execute(() -> {
+				try {
+					// Time may have moved on far enough that this segment would evict one in use
+					if (Math.abs(next - currentIndex) < ring.length() - 1 && lookup(next) == null) {
+						fit(next);
+					}
+				} finally {
+					pending.remove(next);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package net.patowen.planetarium.math;
+
+/**
+ * Approximates the six VSOP variables with piecewise Chebyshev polynomials, so the
+ * full series only needs to be evaluated when a new segment is fitted. Segments are
+ * kept in a {@link ChebyshevCache}, which fits them ahead of the requested times in the
+ * background. Each segment is checked against the series when it is fitted, and segments that
+ * cannot meet the tolerance are evaluated with the series directly.
+ * <p>
+ * Each of a fixed set of precision tiers gets its own truncated copy of the series and its
+ * own cache, all built up front, so changing the precision neither allocates, modifies series
+ * that background fits are reading, nor discards the segments fitted at other precisions.
+ * @author Patrick Owen
+ */
+public class ChebyshevEphemeris implements Ephemeris {
+	// The smallest squared amplitudes kept by the truncated tiers
+	private static final double[] DEFAULT_PRECISIONS = {1e-12, 1e-9, 1e-6};
+	
+	private PrecisionTiers<Vsop> tiers;
+	private double[] params;
+	
+	/**
+	 * Uses 32-day segments of degree 16, fits to within 1e-12 in each variable, and
+	 * offers tiers that drop terms with squared amplitudes up to 1e-12, 1e-9, and 1e-6
+	 * @param vsop the series to approximate
+	 */
+	public ChebyshevEphemeris(Vsop vsop) {
+		this(vsop, 32, 16, 64, 1e-12, DEFAULT_PRECISIONS);
+	}
+	
+	/**
+	 * @param vsop the series to approximate
+	 * @param segmentDays the length of each segment in days
+	 * @param degree the degree of the polynomials, which is raised for segments that need it
+	 * @param maxSegments the number of segments to keep in memory
+	 * @param tolerance the largest allowed absolute error in each VSOP variable
+	 * @param precisions the precisions of the truncated tiers in increasing order, as passed
+	 * to {@link Vsop#truncate(double)}
+	 */
+	public ChebyshevEphemeris(Vsop vsop, double segmentDays, int degree, int maxSegments, double tolerance, double[] precisions) {
+		tiers = new PrecisionTiers<>(vsop, precisions, Vsop::truncate,
+				v -> new ChebyshevCache(v::calculate, 6, segmentDays * 86400.0, degree, degree * 4,
+						tolerance, maxSegments, 2));
+		params = new double[6];
+	}
+	
+	/**
+	 * Discards the fitted segments of the current precision, such as after the underlying
+	 * series has changed
+	 */
+	public void clear() {
+		tiers.get().segments.clear();
+	}
+	
+	/**
+	 * Evaluates the cheapest tier at least as precise as requested from now on. Segments
+	 * fitted at other precisions are kept for when they are chosen again.
+	 * @param precision the largest acceptable precision, as passed to {@link Vsop#truncate(double)},
+	 * with 0 choosing the full series
+	 */
+	public void setPrecision(double precision) {
+		tiers.select(precision);
+	}
+	
+	/**
+	 * Computes the six VSOP variables at the given time
+	 * @param t the time in seconds since J2000
+	 * @param params a 6-element array to store the variables in
+	 */
+	public void calculate(double t, double[] params) {
+		PrecisionTiers.Tier<Vsop> tier = tiers.get();
+		ChebyshevSegment segment = tier.segments.get(t);
+		if (segment == null) {
+			tier.series.calculate(t, params);
+		} else {
+			segment.evaluate(t, params);
+		}
+	}
+	
+	public void perturbOrbit(Orbit orbit, double t) {
+		calculate(t, params);
+		Vsop.setOrbitFromParameters(orbit, params, t);
+	}
+}
@@ -0,0 +1,140 @@
+package net.patowen.planetarium.math;
+
+/**
+ * A set of Chebyshev polynomials approximating a vector-valued function of time over
+ * a single interval
+ * @author Patrick Owen
+ */
+public class ChebyshevSegment {
+	/**
+	 * A function that can be approximated
+	 */
+	public interface Source {
+		/**
+		 * Evaluates the function
+		 * @param time the time at which to evaluate the function
+		 * @param result the array to store each component in
+		 */
+		public void evaluate(double time, double[] result);
+	}
+	
+	private final double start, span;
+	private final int dimension, degree;
+	private final double[] coefficients; // degree+1 coefficients for each component
+	
+	private ChebyshevSegment(double start, double span, int dimension, int degree) {
+		this.start = start;
+		this.span = span;
+		this.dimension = dimension;
+		this.degree = degree;
+		coefficients = new double[dimension * (degree + 1)];
+	}
+	
+	/**
+	 * Fits polynomials to the source by interpolating at Chebyshev nodes and checks the
+	 * fit halfway between the nodes, raising the degree until the tolerance is met.
+	 * @param source the function to approximate
+	 * @param start the beginning of the interval
+	 * @param span the length of the interval
+	 * @param dimension the number of components of the function
+	 * @param degree the initial degree of the polynomials
+	 * @param maxDegree the largest degree to try
+	 * @param tolerance the largest allowed absolute error of any component
+	 * @return the segment, or null if the tolerance could not be met
+	 */
+	public static ChebyshevSegment fit(Source source, double start, double span, int dimension,
+			int degree, int maxDegree, double tolerance) {
+		double[] value = new double[dimension];
+		double[] approx = new double[dimension];
+		
+		while (true) {
+			ChebyshevSegment segment = new ChebyshevSegment(start, span, dimension, degree);
+			int numNodes = degree + 1;
+			
+			for (int k=0; k<numNodes; k++) {
+				double angle = Math.PI * (k + 0.5) / numNodes;
+				source.evaluate(segment.toTime(Math.cos(angle)), value);
+				for (int j=0; j<=degree; j++) {
+					double weight = Math.cos(j * angle) * 2.0 / numNodes;
+					for (int i=0; i<dimension; i++) {
+						segment.coefficients[i*numNodes + j] += value[i] * weight;
+					}
+				}
+			}
+			for (int i=0; i<dimension; i++) {
+				segment.coefficients[i*numNodes] *= 0.5;
+			}
+			
+			double maxError = 0;
+			for (int k=0; k<=numNodes; k++) {
+				double time = segment.toTime(Math.cos(Math.PI * k / numNodes));
+				source.evaluate(time, value);
+				segment.evaluate(time, approx);
+				for (int i=0; i<dimension; i++) {
+					maxError = Math.max(maxError, Math.abs(value[i] - approx[i]));
+				}
+			}
+			
+			if (maxError <= tolerance) return segment;
+			if (degree >= maxDegree) return null;
+			degree = Math.min(degree * 2, maxDegree);
+		}
+	}
+	
+	private double toTime(double x) {
+		return start + (x + 1) * 0.5 * span;
+	}
+	
+	public double getStart() {
+		return start;
+	}
+	
+	public double getSpan() {
+		return span;
+	}
+	
+	/**
+	 * Evaluates the polynomials with Clenshaw's recurrence
+	 * @param time a time within the interval
+	 * @param result the array to store each component in
+	 */
+	public void evaluate(double time, double[] result) {
+		double x = (time - start) / span * 2 - 1;
+		double x2 = x * 2;
+		int numCoefficients = degree + 1;
+		
+		for (int i=0; i<dimension; i++) {
+			int offset = i * numCoefficients;
+			double b1 = 0, b2 = 0;
+			for (int j=degree; j>0; j--) {
+				double b0 = coefficients[offset + j] + x2 * b1 - b2;
+				b2 = b1;
+				b1 = b0;
+			}
+			result[i] = coefficients[offset] + x * b1 - b2;
+		}
+	}
+	
+	/**
+	 * Evaluates the derivatives of the polynomials with respect to time, using the
+	 * identity T_n' = n U_{n-1} and Clenshaw's recurrence for the U series
+	 * @param time a time within the interval
+	 * @param result the array to store the derivative of each component in
+	 */
+	public void evaluateDerivative(double time, double[] result) {
+		double x = (time - start) / span * 2 - 1;
+		double x2 = x * 2;
+		int numCoefficients = degree + 1;
+		
+		for (int i=0; i<dimension; i++) {
+			int offset = i * numCoefficients;
+			double b1 = 0, b2 = 0;
+			for (int j=degree; j>0; j--) {
+				double b0 = j * coefficients[offset + j] + x2 * b1 - b2;
+				b2 = b1;
+				b1 = b0;
+			}
+			result[i] = b1 * 2 / span;
+		}
+	}
+}
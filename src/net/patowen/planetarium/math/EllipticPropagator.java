@@ -0,0 +1,95 @@
+package net.patowen.planetarium.math;
+
+/**
+ * Propagates an elliptic orbit by solving Kepler's equation for the eccentric anomaly,
+ * starting from the previous solution when it is close enough
+ * @author Patrick Owen
+ */
+class EllipticPropagator implements OrbitPropagator {
+	private double px, py, pz; // Direction of periapsis
+	private double qx, qy, qz; // Direction of motion at periapsis
+	private double semimajorAxis, semiminorAxis;
+	private double eccentricity;
+	private double orbitalFrequency;
+	private double startMeanAnomaly, startTime;
+	
+	private double previousMeanAnomaly = Double.NaN;
+	private double previousEccentricAnomaly;
+	
+	/**
+	 * @param perifocal the directions of periapsis and of motion at periapsis, one after the other
+	 * @param semimajorAxis
+	 * @param eccentricity
+	 * @param garam the gravitational parameter of the two bodies together
+	 * @param startMeanAnomaly the mean anomaly at the start time
+	 * @param startTime
+	 */
+	void set(double[] perifocal, double semimajorAxis, double eccentricity, double garam,
+			double startMeanAnomaly, double startTime) {
+		px = perifocal[0]; py = perifocal[1]; pz = perifocal[2];
+		qx = perifocal[3]; qy = perifocal[4]; qz = perifocal[5];
+		
+		this.semimajorAxis = semimajorAxis;
+		this.eccentricity = eccentricity;
+		semiminorAxis = semimajorAxis*Math.sqrt(1-eccentricity*eccentricity);
+		orbitalFrequency = Math.sqrt(garam / (semimajorAxis*semimajorAxis*semimajorAxis));
+		this.startMeanAnomaly = startMeanAnomaly;
+		this.startTime = startTime;
+	}
+	
+	/**
+	 * Records a known solution of Kepler's equation to start the next one from
+	 */
+	void setPreviousSolution(double meanAnomaly, double eccentricAnomaly) {
+		previousMeanAnomaly = meanAnomaly;
+		previousEccentricAnomaly = eccentricAnomaly;
+	}
+	
+	double getMeanAnomaly(double time) {
+		return startMeanAnomaly + (time - startTime)*orbitalFrequency;
+	}
+	
+	double getEccentricity() {
+		return eccentricity;
+	}
+	
+	private double getEccentricAnomaly(double time) {
+		double meanAnomaly = getMeanAnomaly(time);
+		double eccentricAnomaly = KeplerSolver.solve(meanAnomaly, eccentricity, previousMeanAnomaly, previousEccentricAnomaly);
+		previousMeanAnomaly = meanAnomaly;
+		previousEccentricAnomaly = eccentricAnomaly;
+		return eccentricAnomaly;
+	}
+	
+	public void getState(double time, double[] state, int offset) {
+		getStateFromEccentricAnomaly(getEccentricAnomaly(time), state, offset);
+	}
+	
+	/**
+	 * Computes the state for an eccentric anomaly that has already been solved for
+	 */
+	void getStateFromEccentricAnomaly(double eccentricAnomaly, double[] state, int offset) {
+		double cosE = Math.cos(eccentricAnomaly), sinE = Math.sin(eccentricAnomaly);
+		
+		double x = semimajorAxis*(cosE - eccentricity), y = semiminorAxis*sinE;
+		double anomalyRate = orbitalFrequency / (1 - eccentricity*cosE);
+		double vx = -semimajorAxis*sinE*anomalyRate, vy = semiminorAxis*cosE*anomalyRate;
+		
+		state[offset] = px*x + qx*y;
+		state[offset+1] = py*x + qy*y;
+		state[offset+2] = pz*x + qz*y;
+		state[offset+3] = px*vx + qx*vy;
+		state[offset+4] = py*vx + qy*vy;
+		state[offset+5] = pz*vx + qz*vy;
+	}
+	
+	public void getPosition(double time, Vector3 result) {
+		double eccentricAnomaly = getEccentricAnomaly(time);
+		double x = semimajorAxis*(Math.cos(eccentricAnomaly) - eccentricity);
+		double y = semiminorAxis*Math.sin(eccentricAnomaly);
+		
+		result.x = px*x + qx*y;
+		result.y = py*x + qy*y;
+		result.z = pz*x + qz*y;
+	}
+}
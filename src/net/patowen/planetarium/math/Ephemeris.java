@@ -0,0 +1,14 @@
+package net.patowen.planetarium.math;
+
+/**
+ * A source of osculating orbital elements that change over time
+ * @author Patrick Owen
+ */
+public interface Ephemeris {
+	/**
+	 * Sets the elements of the orbit to their values at the given time
+	 * @param orbit the orbit to modify
+	 * @param time the time in seconds since J2000
+	 */
+	public void perturbOrbit(Orbit orbit, double time);
+}
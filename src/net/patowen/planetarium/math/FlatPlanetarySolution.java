@@ -0,0 +1,513 @@
+package net.patowen.planetarium.math;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Evaluates a {@code Vsop.PlanetarySolution} from flat primitive arrays instead of
+ * {@code Term} objects. Each term stores only its non-zero multipliers as (index, multiplier)
+ * pairs, and the terms of each power of t are bucketed by how many arguments they use, so
+ * every bucket is a loop with the same trip count for each term. Within each bucket, the
+ * terms are sorted from largest to smallest amplitude, so the series can be truncated at
+ * any precision by moving the end of each bucket, and truncated copies can share the terms.
+ * @author Patrick Owen
+ */
+public class FlatPlanetarySolution {
+	/**
+	 * How the phase of each term is turned into a sine and cosine
+	 */
+	public enum PhaseMode {
+		/** Sums the arguments and calls {@code Math.sin} and {@code Math.cos} for every term */
+		DIRECT,
+		/**
+		 * Multiplies precomputed sines and cosines of the argument multiples, avoiding trigonometric
+		 * calls per term. The tables are built by repeated angle addition, so their error grows with
+		 * the multiplier, reaching about 1e-10 near a thousand years from J2000.
+		 */
+		RECURRENCE,
+		/** Sums the arguments for a block of terms at a time and evaluates them with {@code SeriesKernel} */
+		BLOCK
+	}
+	
+	// Each group is one power of t for one variable
+	private int numGroups;
+	private int[] groupVariable;
+	private int[] groupExponent;
+	private int[] groupBucketStart; // First bucket of each group, with one extra entry at the end
+	
+	// Each bucket holds the terms of a group with the same number of arguments
+	private int[] bucketArgCount;
+	private int[] bucketTermStart; // First term of each bucket, with one extra entry at the end
+	private int[] bucketArgStart; // First argument of each bucket. Terms use bucketArgCount entries each.
+	private int[] bucketTermEnd; // End of the terms of each bucket that are above the precision
+	
+	private double[] s, c;
+	private double[] amplitude; // s*s + c*c, decreasing within each bucket
+	private int[] argIndex; // Which of the 17 arguments is multiplied
+	private double[] argMultiplier;
+	private int[] argAbsMultiplier;
+	private double[] argSign;
+	
+	// The phase of each term at t=0 and its rate of change, for evaluating many times at once
+	private double[] termPhase, termFrequency;
+	
+	private int[] maxMultiplier;
+	
+	private PhaseMode phaseMode;
+	private VsopArguments arguments;
+	
+	public FlatPlanetarySolution(Vsop.PlanetarySolution solution) {
+		int numBuckets = 0, numTerms = 0, numArgs = 0;
+		for (int var=0; var<6; var++) {
+			for (Vsop.Series series : solution.getVariable(var).getCoefficients()) {
+				numGroups++;
+				boolean[] countUsed = new boolean[18];
+				for (Vsop.Term term : series.getTerms()) {
+					int count = term.getArgCount();
+					if (!countUsed[count]) numBuckets++;
+					countUsed[count] = true;
+					numTerms++;
+					numArgs += count;
+				}
+			}
+		}
+		
+		allocate(numBuckets, numTerms, numArgs);
+		
+		int group = 0, bucket = 0, term = 0, arg = 0;
+		for (int var=0; var<6; var++) {
+			for (Vsop.Series series : solution.getVariable(var).getCoefficients()) {
+				groupVariable[group] = var;
+				groupExponent[group] = series.getExponent();
+				groupBucketStart[group] = bucket;
+				
+				for (int count=0; count<=17; count++) {
+					ArrayList<Vsop.Term> terms = new ArrayList<>();
+					for (Vsop.Term t : series.getTerms()) {
+						if (t.getArgCount() == count) terms.add(t);
+					}
+					if (terms.isEmpty()) continue;
+					terms.sort((a, b) -> Double.compare(b.getAmplitude(), a.getAmplitude()));
+					
+					bucketArgCount[bucket] = count;
+					bucketTermStart[bucket] = term;
+					bucketArgStart[bucket] = arg;
+					
+					for (Vsop.Term t : terms) {
+						s[term] = t.getS();
+						c[term] = t.getC();
+						amplitude[term] = t.getAmplitude();
+						for (int i=0; i<17; i++) {
+							int multiplier = t.getMultiplier(i);
+							if (multiplier != 0) {
+								addArgument(arg++, i, multiplier);
+							}
+						}
+						term++;
+					}
+					bucket++;
+				}
+				group++;
+			}
+		}
+		groupBucketStart[numGroups] = bucket;
+		bucketTermStart[numBuckets] = term;
+		
+		initDerived();
+	}
+	
+	/**
+	 * Reads the series straight from the binary format written by {@code VsopConverter},
+	 * without creating an object for each term. The file stores each block already sorted
+	 * into buckets, so only a counting pass is needed before the arrays are filled.
+	 * @param buffer the contents of the file, positioned at the start
+	 * @param precision the smallest squared amplitude to include
+	 * @throws VsopFormatException if the buffer does not hold a complete binary VSOP file of
+	 * the current version
+	 */
+	public FlatPlanetarySolution(ByteBuffer buffer, double precision) throws VsopFormatException {
+		try {
+			read(buffer, precision);
+		} catch (BufferUnderflowException e) {
+			throw new VsopFormatException("Binary VSOP file is truncated", e);
+		}
+	}
+	
+	private void read(ByteBuffer buffer, double precision) throws VsopFormatException {
+		if (buffer.getInt() != Vsop.BINARY_MAGIC) {
+			throw new VsopFormatException("Not a binary VSOP file");
+		}
+		int version = buffer.getInt();
+		if (version != Vsop.BINARY_VERSION) {
+			throw new VsopFormatException("Unsupported binary VSOP version: " + version);
+		}
+		buffer.getLong(); // The size and modification time of the text file, checked by Vsop
+		buffer.getLong();
+		
+		numGroups = buffer.getInt();
+		if (numGroups < 0) {
+			throw new VsopFormatException("Invalid number of VSOP blocks: " + numGroups);
+		}
+		int blocksStart = buffer.position();
+		
+		int numBuckets = 0, numTerms = 0, numArgs = 0;
+		for (int block=0; block<numGroups; block++) {
+			int var = buffer.get();
+			buffer.get();
+			int blockTerms = buffer.getInt();
+			if (var < 0 || var >= 6) {
+				throw new VsopFormatException("Invalid VSOP variable index: " + var);
+			}
+			
+			int lastCount = -1, bucketCount = -1;
+			double lastAmplitude = 0;
+			for (int i=0; i<blockTerms; i++) {
+				int count = 0;
+				for (int j=0; j<17; j++) {
+					if (buffer.getShort() != 0) count++;
+				}
+				double sTerm = buffer.getDouble(), cTerm = buffer.getDouble();
+				double termAmplitude = sTerm*sTerm + cTerm*cTerm;
+				
+				if (count < lastCount || (count == lastCount && termAmplitude > lastAmplitude)) {
+					throw new VsopFormatException("Binary VSOP terms are not sorted");
+				}
+				lastCount = count;
+				lastAmplitude = termAmplitude;
+				
+				if (termAmplitude <= precision) continue;
+				if (count != bucketCount) {
+					numBuckets++;
+					bucketCount = count;
+				}
+				numTerms++;
+				numArgs += count;
+			}
+		}
+		
+		allocate(numBuckets, numTerms, numArgs);
+		buffer.position(blocksStart);
+		
+		short[] multipliers = new short[17];
+		int bucket = 0, term = 0, arg = 0;
+		for (int group=0; group<numGroups; group++) {
+			groupVariable[group] = buffer.get();
+			groupExponent[group] = buffer.get();
+			groupBucketStart[group] = bucket;
+			int blockTerms = buffer.getInt();
+			
+			int bucketCount = -1;
+			for (int i=0; i<blockTerms; i++) {
+				int count = 0;
+				for (int j=0; j<17; j++) {
+					multipliers[j] = buffer.getShort();
+					if (multipliers[j] != 0) count++;
+				}
+				double sTerm = buffer.getDouble(), cTerm = buffer.getDouble();
+				double termAmplitude = sTerm*sTerm + cTerm*cTerm;
+				if (termAmplitude <= precision) continue;
+				
+				if (count != bucketCount) {
+					bucketArgCount[bucket] = count;
+					bucketTermStart[bucket] = term;
+					bucketArgStart[bucket] = arg;
+					bucket++;
+					bucketCount = count;
+				}
+				
+				s[term] = sTerm;
+				c[term] = cTerm;
+				amplitude[term] = termAmplitude;
+				for (int j=0; j<17; j++) {
+					if (multipliers[j] != 0) {
+						addArgument(arg++, j, multipliers[j]);
+					}
+				}
+				term++;
+			}
+		}
+		groupBucketStart[numGroups] = bucket;
+		bucketTermStart[numBuckets] = term;
+		
+		initDerived();
+	}
+	
+	/**
+	 * Shares the terms of another solution, with storage of its own
+	 */
+	private FlatPlanetarySolution(FlatPlanetarySolution solution) {
+		numGroups = solution.numGroups;
+		groupVariable = solution.groupVariable;
+		groupExponent = solution.groupExponent;
+		groupBucketStart = solution.groupBucketStart;
+		bucketArgCount = solution.bucketArgCount;
+		bucketTermStart = solution.bucketTermStart;
+		bucketArgStart = solution.bucketArgStart;
+		bucketTermEnd = new int[solution.bucketTermEnd.length];
+		s = solution.s;
+		c = solution.c;
+		amplitude = solution.amplitude;
+		argIndex = solution.argIndex;
+		argMultiplier = solution.argMultiplier;
+		argAbsMultiplier = solution.argAbsMultiplier;
+		argSign = solution.argSign;
+		termPhase = solution.termPhase;
+		termFrequency = solution.termFrequency;
+		maxMultiplier = solution.maxMultiplier;
+		phaseMode = solution.phaseMode;
+		arguments = createArguments();
+	}
+	
+	private void allocate(int numBuckets, int numTerms, int numArgs) {
+		groupVariable = new int[numGroups];
+		groupExponent = new int[numGroups];
+		groupBucketStart = new int[numGroups + 1];
+		bucketArgCount = new int[numBuckets];
+		bucketTermStart = new int[numBuckets + 1];
+		bucketArgStart = new int[numBuckets];
+		bucketTermEnd = new int[numBuckets];
+		s = new double[numTerms];
+		c = new double[numTerms];
+		amplitude = new double[numTerms];
+		argIndex = new int[numArgs];
+		argMultiplier = new double[numArgs];
+		argAbsMultiplier = new int[numArgs];
+		argSign = new double[numArgs];
+		maxMultiplier = new int[17];
+	}
+	
+	private void addArgument(int arg, int index, int multiplier) {
+		argIndex[arg] = index;
+		argMultiplier[arg] = multiplier;
+		argAbsMultiplier[arg] = Math.abs(multiplier);
+		argSign[arg] = Math.signum(multiplier);
+		maxMultiplier[index] = Math.max(maxMultiplier[index], Math.abs(multiplier));
+	}
+	
+	/**
+	 * Fills in everything that follows from the terms once they are in place
+	 */
+	private void initDerived() {
+		int numBuckets = bucketTermEnd.length;
+		for (int b=0; b<numBuckets; b++) {
+			bucketTermEnd[b] = bucketTermStart[b+1];
+		}
+		
+		termPhase = new double[s.length];
+		termFrequency = new double[s.length];
+		for (int b=0; b<numBuckets; b++) {
+			int a = bucketArgStart[b];
+			for (int k=bucketTermStart[b]; k<bucketTermStart[b+1]; k++) {
+				for (int j=0; j<bucketArgCount[b]; j++, a++) {
+					termPhase[k] += argMultiplier[a] * Vsop.lambdaCoeffConstant[argIndex[a]];
+					termFrequency[k] += argMultiplier[a] * Vsop.lambdaCoeffLinear[argIndex[a]];
+				}
+			}
+		}
+		
+		phaseMode = PhaseMode.DIRECT;
+		arguments = createArguments();
+	}
+	
+	/**
+	 * Returns a copy of the solution truncated to the terms with {@code s*s + c*c} greater
+	 * than the given precision. The copy shares the terms with this solution and only has its
+	 * own bucket ends, so it is cheap, and each copy can be evaluated without affecting the
+	 * others. Terms dropped when the series was loaded cannot be restored.
+	 * @param precision the smallest squared amplitude to include
+	 * @return the truncated solution, with the same phase mode
+	 */
+	public FlatPlanetarySolution truncate(double precision) {
+		FlatPlanetarySolution truncated = new FlatPlanetarySolution(this);
+		int[] bucketTermEnd = truncated.bucketTermEnd;
+		for (int b=0; b<bucketTermEnd.length; b++) {
+			// Find the first term at or below the precision
+			int low = bucketTermStart[b], high = bucketTermStart[b+1];
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (amplitude[mid] > precision) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			bucketTermEnd[b] = low;
+		}
+		return truncated;
+	}
+	
+	/**
+	 * @return the largest absolute multiplier of each of the 17 arguments
+	 */
+	int[] getMaxMultiplier() {
+		return maxMultiplier;
+	}
+	
+	public void setPhaseMode(PhaseMode phaseMode) {
+		this.phaseMode = phaseMode;
+	}
+	
+	public PhaseMode getPhaseMode() {
+		return phaseMode;
+	}
+	
+	/**
+	 * Returns storage for arguments whose tables cover every multiplier used by this solution
+	 * @return a new {@code VsopArguments}
+	 */
+	public VsopArguments createArguments() {
+		return new VsopArguments(maxMultiplier);
+	}
+	
+	public double[] calculate(double t) {
+		double[] result = new double[6];
+		calculate(t, result);
+		return result;
+	}
+	
+	/**
+	 * Computes the six VSOP variables at the given time. This reuses internal storage, so
+	 * it should not be called from more than one thread at once.
+	 * @param t the time in thousands of Julian years since J2000
+	 * @param result a 6-element array to store the variables in
+	 */
+	public void calculate(double t, double[] result) {
+		arguments.setTime(t, phaseMode == PhaseMode.RECURRENCE);
+		calculate(arguments, t, result);
+	}
+	
+	/**
+	 * Computes the six VSOP variables from arguments that have already been computed
+	 * @param args the arguments at time t, with tables filled if the phase mode is {@code RECURRENCE}
+	 * @param t the time in thousands of Julian years since J2000
+	 * @param result a 6-element array to store the variables in
+	 */
+	public void calculate(VsopArguments args, double t, double[] result) {
+		for (int i=0; i<6; i++) {
+			result[i] = 0;
+		}
+		
+		for (int group=0; group<numGroups; group++) {
+			double sum = 0;
+			for (int bucket=groupBucketStart[group]; bucket<groupBucketStart[group+1]; bucket++) {
+				if (phaseMode == PhaseMode.RECURRENCE) {
+					sum += sumRecurrence(bucket, args);
+				} else if (phaseMode == PhaseMode.BLOCK) {
+					sum += sumBlocks(bucket, args);
+				} else {
+					sum += sumDirect(bucket, args.lambda1);
+				}
+			}
+			result[groupVariable[group]] += sum * Math.pow(t, groupExponent[group]);
+		}
+	}
+	
+	/**
+	 * Computes the six VSOP variables at many times. The times are processed in blocks,
+	 * and within a block each term is loaded once and applied to every time in the block.
+	 * This can be called from several threads at once.
+	 * @param t the times in thousands of Julian years since J2000
+	 * @param result an array of 6 times as many elements as t to store the variables in,
+	 * with the six variables for each time stored together
+	 */
+	public void calculate(double[] t, double[] result) {
+		SeriesKernel kernel = new SeriesKernel();
+		double[] phase = kernel.phase, sin = kernel.sin, cos = kernel.cos;
+		double[] sum = new double[SeriesKernel.BLOCK_SIZE];
+		
+		for (int i=0; i<t.length*6; i++) {
+			result[i] = 0;
+		}
+		
+		for (int start=0; start<t.length; start+=SeriesKernel.BLOCK_SIZE) {
+			int length = Math.min(SeriesKernel.BLOCK_SIZE, t.length - start);
+			
+			for (int group=0; group<numGroups; group++) {
+				for (int i=0; i<length; i++) {
+					sum[i] = 0;
+				}
+				
+				for (int bucket=groupBucketStart[group]; bucket<groupBucketStart[group+1]; bucket++) {
+					for (int term=bucketTermStart[bucket]; term<bucketTermEnd[bucket]; term++) {
+						double phi0 = termPhase[term], w = termFrequency[term];
+						double sTerm = s[term], cTerm = c[term];
+						for (int i=0; i<length; i++) {
+							phase[i] = phi0 + w * t[start + i];
+						}
+						SeriesKernel.sinCos(phase, sin, cos, length);
+						for (int i=0; i<length; i++) {
+							sum[i] += sTerm * sin[i] + cTerm * cos[i];
+						}
+					}
+				}
+				
+				int var = groupVariable[group], exponent = groupExponent[group];
+				for (int i=0; i<length; i++) {
+					result[(start + i) * 6 + var] += sum[i] * Math.pow(t[start + i], exponent);
+				}
+			}
+		}
+	}
+	
+	private double sumDirect(int bucket, double[] lambda1) {
+		int n = bucketArgCount[bucket];
+		int arg = bucketArgStart[bucket];
+		double sum = 0;
+		for (int term=bucketTermStart[bucket]; term<bucketTermEnd[bucket]; term++) {
+			double phi = 0;
+			for (int j=0; j<n; j++, arg++) {
+				phi += argMultiplier[arg] * lambda1[argIndex[arg]];
+			}
+			sum += s[term] * Math.sin(phi) + c[term] * Math.cos(phi);
+		}
+		return sum;
+	}
+	
+	private double sumBlocks(int bucket, VsopArguments args) {
+		double[] lambda1 = args.lambda1;
+		SeriesKernel kernel = args.kernel;
+		double[] phase = kernel.phase, sin = kernel.sin, cos = kernel.cos;
+		
+		int n = bucketArgCount[bucket];
+		int arg = bucketArgStart[bucket];
+		int termEnd = bucketTermEnd[bucket];
+		double sum = 0;
+		for (int start=bucketTermStart[bucket]; start<termEnd; start+=SeriesKernel.BLOCK_SIZE) {
+			int length = Math.min(SeriesKernel.BLOCK_SIZE, termEnd - start);
+			for (int i=0; i<length; i++) {
+				double phi = 0;
+				for (int j=0; j<n; j++, arg++) {
+					phi += argMultiplier[arg] * lambda1[argIndex[arg]];
+				}
+				phase[i] = phi;
+			}
+			SeriesKernel.sinCos(phase, sin, cos, length);
+			for (int i=0; i<length; i++) {
+				sum += s[start + i] * sin[i] + c[start + i] * cos[i];
+			}
+		}
+		return sum;
+	}
+	
+	private double sumRecurrence(int bucket, VsopArguments args) {
+		int[] tableOffset = args.tableOffset;
+		double[] cosTable = args.cosTable, sinTable = args.sinTable;
+		
+		int n = bucketArgCount[bucket];
+		int arg = bucketArgStart[bucket];
+		double sum = 0;
+		for (int term=bucketTermStart[bucket]; term<bucketTermEnd[bucket]; term++) {
+			double cosPhi = 1, sinPhi = 0;
+			for (int j=0; j<n; j++, arg++) {
+				int k = tableOffset[argIndex[arg]] + argAbsMultiplier[arg];
+				double cosArg = cosTable[k], sinArg = argSign[arg] * sinTable[k];
+				double cosNext = cosPhi * cosArg - sinPhi * sinArg;
+				sinPhi = sinPhi * cosArg + cosPhi * sinArg;
+				cosPhi = cosNext;
+			}
+			sum += s[term] * sinPhi + c[term] * cosPhi;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,174 @@
+package net.patowen.planetarium.math;
+
+/**
+ * Solves Kepler's equation, M = E - e sin E, for the eccentric anomaly of an elliptic orbit.
+ * Each step is Danby's quartic correction, which refines the Halley step with the third
+ * derivative, so even a rough starting value converges in a few steps. The number of steps
+ * is capped, so no eccentricity can make a frame stall. Single orbits can start from the
+ * solution at a nearby mean anomaly, and many orbits can be solved at once with {@code solve},
+ * which runs a fixed number of steps through {@link SeriesKernel}.
+ * @author Patrick Owen
+ */
+public class KeplerSolver {
+	/** The most steps taken for a single orbit */
+	public static final int MAX_ITERATIONS = 8;
+	
+	// Danby's starting value needs at most this many steps to reach double precision for e < 1
+	private static final int BATCH_ITERATIONS = 4;
+	
+	// A step this small leaves an error far below double precision, since convergence is quartic
+	private static final double TOLERANCE = 1e-12;
+	
+	private static final double TWO_PI = Math.PI * 2;
+	
+	private final SeriesKernel kernel;
+	private final double[] mean, step;
+	
+	/**
+	 * Creates scratch storage for solving many orbits at once. Each thread needs its own.
+	 */
+	public KeplerSolver() {
+		kernel = new SeriesKernel();
+		mean = new double[SeriesKernel.BLOCK_SIZE];
+		step = new double[SeriesKernel.BLOCK_SIZE];
+	}
+	
+	/**
+	 * Solves Kepler's equation from Danby's starting value
+	 * @param meanAnomaly the mean anomaly in radians
+	 * @param eccentricity the eccentricity, which must be less than 1
+	 * @return the eccentric anomaly, in the range [-pi, pi]
+	 */
+	public static double solve(double meanAnomaly, double eccentricity) {
+		meanAnomaly = reduce(meanAnomaly);
+		return iterate(meanAnomaly, eccentricity, getStartingValue(meanAnomaly, eccentricity));
+	}
+	
+	/**
+	 * Solves Kepler's equation, starting from a known solution at a nearby mean anomaly, such
+	 * as the previous frame's. A solution that is too far away is ignored.
+	 * @param meanAnomaly the mean anomaly in radians
+	 * @param eccentricity the eccentricity, which must be less than 1
+	 * @param previousMeanAnomaly the mean anomaly of the known solution
+	 * @param previousEccentricAnomaly the known solution
+	 * @return the eccentric anomaly, in the range [-pi, pi]
+	 */
+	public static double solve(double meanAnomaly, double eccentricity,
+			double previousMeanAnomaly, double previousEccentricAnomaly) {
+		meanAnomaly = reduce(meanAnomaly);
+		double change = reduce(meanAnomaly - previousMeanAnomaly);
+		double derivative = 1 - eccentricity * Math.cos(previousEccentricAnomaly);
+		double extrapolation = change / derivative;
+		
+		// Following the slope is only accurate while the curvature is small over the step, which
+		// rules out large steps near periapsis of a nearly parabolic orbit
+		if (!(Math.abs(extrapolation) * eccentricity < 0.25 * derivative)) {
+			return iterate(meanAnomaly, eccentricity, getStartingValue(meanAnomaly, eccentricity));
+		}
+		
+		// Move the guess to the same turn as the mean anomaly
+		double guess = previousEccentricAnomaly + extrapolation;
+		guess -= Math.rint((guess - meanAnomaly) / TWO_PI) * TWO_PI;
+		return iterate(meanAnomaly, eccentricity, guess);
+	}
+	
+	/**
+	 * Solves Kepler's equation for many orbits at once. Every orbit takes the same number of
+	 * steps, so there are no branches in the main loops.
+	 * @param meanAnomaly the mean anomalies in radians
+	 * @param eccentricity the eccentricities, which must be less than 1
+	 * @param eccentricAnomaly the array to store the eccentric anomalies in, each in the range [-pi, pi]
+	 * @param length the number of orbits
+	 */
+	public void solve(double[] meanAnomaly, double[] eccentricity, double[] eccentricAnomaly, int length) {
+		for (int start=0; start<length; start += SeriesKernel.BLOCK_SIZE) {
+			int blockLength = Math.min(SeriesKernel.BLOCK_SIZE, length - start);
+			
+			for (int i=0; i<blockLength; i++) {
+				mean[i] = reduce(meanAnomaly[start+i]);
+			}
+			for (int i=0; i<blockLength; i++) {
+				kernel.phase[i] = getStartingValue(mean[i], eccentricity[start+i]);
+			}
+			
+			solveBlock(eccentricity, eccentricAnomaly, start, blockLength);
+		}
+	}
+	
+	/**
+	 * Runs the steps for one block, whose starting values are already in the kernel's phases.
+	 * Any orbit that has not converged by the end is solved again on its own.
+	 */
+	private void solveBlock(double[] eccentricity, double[] eccentricAnomaly, int start, int blockLength) {
+		double[] guess = kernel.phase, sin = kernel.sin, cos = kernel.cos;
+		
+		for (int iteration=0; iteration<BATCH_ITERATIONS; iteration++) {
+			SeriesKernel.sinCos(guess, sin, cos, blockLength);
+			for (int i=0; i<blockLength; i++) {
+				step[i] = getStep(mean[i], eccentricity[start+i], guess[i], sin[i], cos[i]);
+			}
+			for (int i=0; i<blockLength; i++) {
+				guess[i] += step[i];
+			}
+		}
+		
+		for (int i=0; i<blockLength; i++) {
+			eccentricAnomaly[start+i] = guess[i];
+		}
+		
+		for (int i=0; i<blockLength; i++) {
+			if (!(Math.abs(step[i]) < TOLERANCE)) {
+				eccentricAnomaly[start+i] = iterate(mean[i], eccentricity[start+i], guess[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Danby's starting value, which is within about 0.85 e of the solution. Near periapsis
+	 * of a nearly parabolic orbit, the cubic approximation M = e E^3 / 6 is closer. A mean
+	 * anomaly of zero is returned as is, since it is already the solution for any eccentricity.
+	 */
+	private static double getStartingValue(double meanAnomaly, double eccentricity) {
+		if (meanAnomaly == 0) {
+			return meanAnomaly;
+		}
+		
+		double magnitude = Math.abs(meanAnomaly) + 0.85 * eccentricity;
+		// The cubic approximation only exists for eccentric orbits, and 0/0 would poison the minimum
+		if (eccentricity > 0) {
+			magnitude = Math.min(magnitude, Math.cbrt(6 * Math.abs(meanAnomaly) / eccentricity));
+		}
+		return Math.copySign(magnitude, meanAnomaly);
+	}
+	
+	private static double iterate(double meanAnomaly, double eccentricity, double guess) {
+		for (int iteration=0; iteration<MAX_ITERATIONS; iteration++) {
+			double step = getStep(meanAnomaly, eccentricity, guess, Math.sin(guess), Math.cos(guess));
+			guess += step;
+			if (Math.abs(step) < TOLERANCE) break;
+		}
+		return guess;
+	}
+	
+	/**
+	 * Computes Danby's correction to the guess, which is built from the Newton and Halley
+	 * corrections and converges with order four
+	 */
+	private static double getStep(double meanAnomaly, double eccentricity, double guess, double sin, double cos) {
+		double f0 = guess - eccentricity * sin - meanAnomaly;
+		double f1 = 1 - eccentricity * cos;
+		double f2 = eccentricity * sin;
+		double f3 = eccentricity * cos;
+		
+		double newton = -f0 / f1;
+		double halley = -f0 / (f1 + 0.5 * newton * f2);
+		return -f0 / (f1 + 0.5 * halley * f2 + halley * halley * f3 / 6);
+	}
+	
+	/**
+	 * Returns the angle congruent to x in the range [-pi, pi]
+	 */
+	private static double reduce(double x) {
+		return x - Math.rint(x / TWO_PI) * TWO_PI;
+	}
+}
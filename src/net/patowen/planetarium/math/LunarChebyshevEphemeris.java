@@ -0,0 +1,81 @@
+package net.patowen.planetarium.math;
+
+/**
+ * Approximates the geocentric position of the Moon with piecewise Chebyshev polynomials,
+ * taking the velocity from the derivative of the polynomials. Segments ahead of the most
+ * recently requested time are fitted in the background by a {@link ChebyshevCache}, so the
+ * lunar series is rarely evaluated on the calling thread. As with {@link ChebyshevEphemeris},
+ * each of a fixed set of precision tiers gets its own truncated theory and its own cache.
+ * @author Patrick Owen
+ */
+public class LunarChebyshevEphemeris implements Ephemeris {
+	// Enough 4-day segments for several seconds ahead at a year per second
+	private static final int CAPACITY = 256;
+	
+	// The precisions of the truncated tiers, in radians and fractions of the semimajor axis
+	private static final double[] DEFAULT_PRECISIONS = {1e-7, 1e-5, 1e-3};
+	
+	private PrecisionTiers<LunarTheory> tiers;
+	
+	private double[] position, velocity;
+	
+	/**
+	 * Uses 4-day segments of degree 16, fits to within 10 centimeters, prepares the next
+	 * 8 segments in advance, and offers tiers truncated to 1e-7, 1e-5, and 1e-3
+	 * @param lunarTheory the series to approximate
+	 */
+	public LunarChebyshevEphemeris(LunarTheory lunarTheory) {
+		this(lunarTheory, 4, 16, 1e-4, 8, DEFAULT_PRECISIONS);
+	}
+	
+	/**
+	 * @param lunarTheory the series to approximate
+	 * @param segmentDays the length of each segment in days
+	 * @param degree the degree of the polynomials, which is raised for segments that need it
+	 * @param tolerance the largest allowed error in each coordinate in kilometers
+	 * @param lookahead the smallest number of segments to prepare ahead of the requested time
+	 * @param precisions the precisions of the truncated tiers in increasing order, as passed
+	 * to {@link LunarTheory#truncate(double)}
+	 */
+	public LunarChebyshevEphemeris(LunarTheory lunarTheory, double segmentDays, int degree, double tolerance, int lookahead,
+			double[] precisions) {
+		tiers = new PrecisionTiers<>(lunarTheory, precisions, LunarTheory::truncate,
+				theory -> new ChebyshevCache(theory::computePosition, 3, segmentDays * 86400.0,
+						degree, degree * 4, tolerance, Math.max(CAPACITY, lookahead * 4), lookahead));
+		
+		position = new double[3];
+		velocity = new double[3];
+	}
+	
+	/**
+	 * Evaluates the cheapest tier at least as precise as requested from now on. Segments
+	 * fitted at other precisions are kept for when they are chosen again.
+	 * @param prec the largest acceptable precision, as passed to {@link LunarTheory#truncate(double)},
+	 * with 0 choosing the full theory
+	 */
+	public void setPrecision(double prec) {
+		tiers.select(prec);
+	}
+	
+	/**
+	 * Computes the geocentric position and velocity of the Moon
+	 * @param t the time in seconds since J2000
+	 * @param position a 3-element array to store the position in kilometers
+	 * @param velocity a 3-element array to store the velocity in kilometers per second
+	 */
+	public void calculate(double t, double[] position, double[] velocity) {
+		PrecisionTiers.Tier<LunarTheory> tier = tiers.get();
+		ChebyshevSegment segment = tier.segments.get(t);
+		if (segment == null) {
+			tier.series.computePositionAndVelocity(t, position, velocity);
+		} else {
+			segment.evaluate(t, position);
+			segment.evaluateDerivative(t, velocity);
+		}
+	}
+	
+	public void perturbOrbit(Orbit orbit, double t) {
+		calculate(t, position, velocity);
+		orbit.setParamsFromPositionAndVelocity(position, velocity);
+	}
+}
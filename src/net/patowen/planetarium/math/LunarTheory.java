@@ -1,11 +1,12 @@
 package net.patowen.planetarium.math;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Scanner;
-import java.util.StringTokenizer;
+import java.util.stream.IntStream;
 
-public class LunarTheory {
+public class LunarTheory implements Ephemeris {
 	private Table[] tables;
 	
 	// Constants
@@ -29,6 +30,20 @@ public class LunarTheory {
 	// Calculation results
 	private ArrayList<LunarSeries> lunarSeries;
 	
+	private boolean blockEvaluation;
+	private ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+	
+	/**
+	 * Storage reused by each thread's evaluations, so that evaluating at a single time
+	 * allocates nothing
+	 */
+	private static class Scratch {
+		final SeriesKernel kernel = new SeriesKernel();
+		final double[] t = new double[5];
+		final double[] series = new double[3], seriesDeriv = new double[3];
+		final double[] valueAndDeriv = new double[2];
+	}
+	
 	public LunarTheory() {
 		tables = new Table[36];
 	}
@@ -66,29 +81,30 @@ public class LunarTheory {
 		public void read(int fileIndex) {
 			ClassLoader cl = LunarTheory.class.getClassLoader();
 			InputStream stream = cl.getResourceAsStream("net/patowen/planetarium/data/elp/ELP" + fileIndex);
-			Scanner scan = new Scanner(stream);
-			scan.nextLine();
+			TableTokenizer toks;
+			try {
+				toks = TableTokenizer.fromStream(stream);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			toks.nextLine();
 			
-			while (scan.hasNextLine()) {
-				String str = scan.nextLine();
-				str = str.replaceAll("-", " -");
-				StringTokenizer toks = new StringTokenizer(str);
+			while (toks.hasNextLine()) {
 				int[] nextInts = new int[numInts];
 				double[] nextDoubles = new double[numDoubles];
 				
 				for (int i=0; i<numInts; i++) {
-					nextInts[i] = Integer.parseInt(toks.nextToken());
+					nextInts[i] = toks.nextInt();
 				}
 				
 				for (int i=0; i<numDoubles; i++) {
-					nextDoubles[i] = Double.parseDouble(toks.nextToken());
+					nextDoubles[i] = toks.nextDouble();
 				}
 				
 				ints.add(nextInts);
 				doubles.add(nextDoubles);
+				toks.nextLine();
 			}
-			
-			scan.close();
 		}
 	}
 	
@@ -122,6 +138,17 @@ public class LunarTheory {
 			}
 			return coefficient * Math.cos(y) * yDeriv;
 		}
+		
+		/**
+		 * Adds the value and derivative of the term to result[0] and result[1], evaluating
+		 * the sine argument only once
+		 */
+		public void accumulateWithDerivative(double[] t, double[] result) {
+			double y = sinArgument[0] + sinArgument[1]*t[1] + sinArgument[2]*t[2] + sinArgument[3]*t[3] + sinArgument[4]*t[4];
+			double yDeriv = sinArgument[1] + 2*sinArgument[2]*t[1] + 3*sinArgument[3]*t[2] + 4*sinArgument[4]*t[3];
+			result[0] += coefficient * Math.sin(y);
+			result[1] += coefficient * Math.cos(y) * yDeriv;
+		}
 	}
 	
 	public class PerturbationTerm {
@@ -149,19 +176,37 @@ public class LunarTheory {
 	}
 	
 	public class MainSeries {
-		private ArrayList<MainTerm> terms;
+		private ArrayList<MainTerm> terms; // Sorted from largest to smallest once packed
+		private int numActive; // The number of terms above the current threshold
+		
+		// The terms copied into one array per field for block evaluation
+		private double[] packedCoefficient;
+		private double[][] packedArgument;
 		
 		public MainSeries() {
 			terms = new ArrayList<>();
 		}
 		
+		/**
+		 * Shares the terms of a packed series, leaving out those whose coefficients are
+		 * smaller than the threshold
+		 */
+		public MainSeries(MainSeries series, double threshold) {
+			terms = series.terms;
+			packedCoefficient = series.packedCoefficient;
+			packedArgument = series.packedArgument;
+			numActive = countAbove(packedCoefficient, threshold);
+		}
+		
 		public void addTerm(double coefficient, double[] sinArgument) {
 			terms.add(new MainTerm(coefficient, sinArgument));
+			numActive = terms.size();
 		}
 		
 		public double compute(double[] t) {
 			double result = 0;
-			for (MainTerm term : terms) {
+			for (int i=0; i<numActive; i++) {
+				MainTerm term = terms.get(i);
 				result += term.compute(t);
 			}
 			return result;
@@ -169,29 +214,154 @@ public class LunarTheory {
 		
 		public double derivative(double[] t) {
 			double result = 0;
-			for (MainTerm term : terms) {
+			for (int i=0; i<numActive; i++) {
+				MainTerm term = terms.get(i);
 				result += term.derivative(t);
 			}
 			return result;
 		}
+		
+		/**
+		 * Adds the value and derivative of the series to result[0] and result[1]
+		 */
+		public void accumulateWithDerivative(double[] t, double[] result) {
+			for (int i=0; i<numActive; i++) {
+				MainTerm term = terms.get(i);
+				term.accumulateWithDerivative(t, result);
+			}
+		}
+		
+		/**
+		 * Sorts the terms by the size of their coefficients and copies them into the
+		 * arrays used for block evaluation
+		 */
+		public void pack() {
+			terms.sort((a, b) -> Double.compare(Math.abs(b.coefficient), Math.abs(a.coefficient)));
+			int numTerms = terms.size();
+			packedCoefficient = new double[numTerms];
+			packedArgument = new double[5][numTerms];
+			for (int i=0; i<numTerms; i++) {
+				MainTerm term = terms.get(i);
+				packedCoefficient[i] = term.coefficient;
+				for (int k=0; k<5; k++) {
+					packedArgument[k][i] = term.sinArgument[k];
+				}
+			}
+		}
+		
+		/**
+		 * Computes the series a block of terms at a time with {@code SeriesKernel}
+		 */
+		public double computeBlocks(double[] t, SeriesKernel kernel) {
+			double[] phase = kernel.phase, sin = kernel.sin, cos = kernel.cos;
+			double[] a0 = packedArgument[0], a1 = packedArgument[1], a2 = packedArgument[2], a3 = packedArgument[3], a4 = packedArgument[4];
+			int numTerms = numActive;
+			
+			double result = 0;
+			for (int start=0; start<numTerms; start+=SeriesKernel.BLOCK_SIZE) {
+				int length = Math.min(SeriesKernel.BLOCK_SIZE, numTerms - start);
+				for (int i=0; i<length; i++) {
+					int k = start + i;
+					phase[i] = a0[k] + a1[k]*t[1] + a2[k]*t[2] + a3[k]*t[3] + a4[k]*t[4];
+				}
+				SeriesKernel.sinCos(phase, sin, cos, length);
+				for (int i=0; i<length; i++) {
+					result += packedCoefficient[start + i] * sin[i];
+				}
+			}
+			return result;
+		}
+		
+		/**
+		 * Adds the value and derivative of the series to result[0] and result[1] a block of
+		 * terms at a time with {@code SeriesKernel}
+		 */
+		public void accumulateWithDerivativeBlocks(double[] t, double[] result, SeriesKernel kernel) {
+			double[] phase = kernel.phase, sin = kernel.sin, cos = kernel.cos;
+			double[] a0 = packedArgument[0], a1 = packedArgument[1], a2 = packedArgument[2], a3 = packedArgument[3], a4 = packedArgument[4];
+			int numTerms = numActive;
+			
+			double value = 0, derivative = 0;
+			for (int start=0; start<numTerms; start+=SeriesKernel.BLOCK_SIZE) {
+				int length = Math.min(SeriesKernel.BLOCK_SIZE, numTerms - start);
+				for (int i=0; i<length; i++) {
+					int k = start + i;
+					phase[i] = a0[k] + a1[k]*t[1] + a2[k]*t[2] + a3[k]*t[3] + a4[k]*t[4];
+				}
+				SeriesKernel.sinCos(phase, sin, cos, length);
+				for (int i=0; i<length; i++) {
+					int k = start + i;
+					double yDeriv = a1[k] + 2*a2[k]*t[1] + 3*a3[k]*t[2] + 4*a4[k]*t[3];
+					value += packedCoefficient[k] * sin[i];
+					derivative += packedCoefficient[k] * cos[i] * yDeriv;
+				}
+			}
+			result[0] += value;
+			result[1] += derivative;
+		}
+		
+		/**
+		 * Adds the value and derivative of the series at many times, applying each term to
+		 * every time before moving on to the next
+		 * @param t the powers of time in Julian centuries, with t[k][i] the kth power of the ith time
+		 * @param length the number of times, at most {@code SeriesKernel.BLOCK_SIZE}
+		 * @param value the array to add the value at each time to
+		 * @param derivative the array to add the derivative at each time to
+		 */
+		public void accumulateBatch(double[][] t, int length, double[] value, double[] derivative, SeriesKernel kernel) {
+			double[] phase = kernel.phase, sin = kernel.sin, cos = kernel.cos;
+			double[] t1 = t[1], t2 = t[2], t3 = t[3], t4 = t[4];
+			
+			for (int k=0; k<numActive; k++) {
+				double coefficient = packedCoefficient[k];
+				double a0 = packedArgument[0][k], a1 = packedArgument[1][k], a2 = packedArgument[2][k], a3 = packedArgument[3][k], a4 = packedArgument[4][k];
+				for (int i=0; i<length; i++) {
+					phase[i] = a0 + a1*t1[i] + a2*t2[i] + a3*t3[i] + a4*t4[i];
+				}
+				SeriesKernel.sinCos(phase, sin, cos, length);
+				for (int i=0; i<length; i++) {
+					value[i] += coefficient * sin[i];
+					derivative[i] += coefficient * cos[i] * (a1 + 2*a2*t1[i] + 3*a3*t2[i] + 4*a4*t3[i]);
+				}
+			}
+		}
 	}
 	
 	public class PerturbationSeries {
-		private ArrayList<PerturbationTerm> terms;
+		private ArrayList<PerturbationTerm> terms; // Sorted from largest to smallest once packed
+		private int numActive; // The number of terms above the current threshold
 		private int factorExponent;
 		
+		// The terms copied into one array per field for block evaluation
+		private double[] packedCoefficient, packedPhase, packedFrequency;
+		
 		public PerturbationSeries(int factorExponent) {
 			terms = new ArrayList<>();
 			this.factorExponent = factorExponent;
 		}
 		
+		/**
+		 * Shares the terms of a packed series, leaving out those whose coefficients are
+		 * smaller than the threshold
+		 */
+		public PerturbationSeries(PerturbationSeries series, double threshold) {
+			terms = series.terms;
+			factorExponent = series.factorExponent;
+			packedCoefficient = series.packedCoefficient;
+			packedPhase = series.packedPhase;
+			packedFrequency = series.packedFrequency;
+			numActive = countAbove(packedCoefficient, threshold);
+		}
+		
 		public void addTerm(double coefficient, double[] sinArgument) {
 			terms.add(new PerturbationTerm(coefficient, sinArgument));
+			numActive = terms.size();
 		}
 		
 		public double compute(double[] t) {
 			double result = 0;
-			for (PerturbationTerm term : terms) {
+			for (int i=0; i<numActive; i++) {
+				PerturbationTerm term = terms.get(i);
 				result += term.compute(t);
 			}
 			return result * t[factorExponent];
@@ -200,7 +370,8 @@ public class LunarTheory {
 		public double derivative(double[] t) {
 			double result = 0;
 			double sumDeriv = 0;
-			for (PerturbationTerm term : terms) {
+			for (int i=0; i<numActive; i++) {
+				PerturbationTerm term = terms.get(i);
 				sumDeriv += term.derivative(t);
 			}
 			
@@ -208,13 +379,141 @@ public class LunarTheory {
 			
 			if (factorExponent > 0) {
 				double sum = 0;
-				for (PerturbationTerm term : terms) {
+				for (int i=0; i<numActive; i++) {
+					PerturbationTerm term = terms.get(i);
 					sum += term.compute(t);
 				}
 				result += sum * t[factorExponent-1] * factorExponent;
 			}
 			return result;
 		}
+		
+		/**
+		 * Adds the value and derivative of the series to result[0] and result[1]
+		 */
+		public void accumulateWithDerivative(double[] t, double[] result) {
+			// The sine argument of each term is only evaluated once
+			double sum = 0, sumDeriv = 0;
+			for (int i=0; i<numActive; i++) {
+				PerturbationTerm term = terms.get(i);
+				double y = term.sinArgument[0] + term.sinArgument[1] * t[1];
+				sum += term.coefficient * Math.sin(y);
+				sumDeriv += term.coefficient * Math.cos(y) * term.sinArgument[1];
+			}
+			
+			result[0] += sum * t[factorExponent];
+			result[1] += sumDeriv * t[factorExponent];
+			if (factorExponent > 0) {
+				result[1] += sum * t[factorExponent-1] * factorExponent;
+			}
+		}
+		
+		/**
+		 * Sorts the terms by the size of their coefficients and copies them into the
+		 * arrays used for block evaluation
+		 */
+		public void pack() {
+			terms.sort((a, b) -> Double.compare(Math.abs(b.coefficient), Math.abs(a.coefficient)));
+			int numTerms = terms.size();
+			packedCoefficient = new double[numTerms];
+			packedPhase = new double[numTerms];
+			packedFrequency = new double[numTerms];
+			for (int i=0; i<numTerms; i++) {
+				PerturbationTerm term = terms.get(i);
+				packedCoefficient[i] = term.coefficient;
+				packedPhase[i] = term.sinArgument[0];
+				packedFrequency[i] = term.sinArgument[1];
+			}
+		}
+		
+		/**
+		 * Computes the series a block of terms at a time with {@code SeriesKernel}
+		 */
+		public double computeBlocks(double[] t, SeriesKernel kernel) {
+			double[] phase = kernel.phase, sin = kernel.sin, cos = kernel.cos;
+			int numTerms = numActive;
+			
+			double result = 0;
+			for (int start=0; start<numTerms; start+=SeriesKernel.BLOCK_SIZE) {
+				int length = Math.min(SeriesKernel.BLOCK_SIZE, numTerms - start);
+				for (int i=0; i<length; i++) {
+					phase[i] = packedPhase[start + i] + packedFrequency[start + i] * t[1];
+				}
+				SeriesKernel.sinCos(phase, sin, cos, length);
+				for (int i=0; i<length; i++) {
+					result += packedCoefficient[start + i] * sin[i];
+				}
+			}
+			return result * t[factorExponent];
+		}
+		
+		/**
+		 * Adds the value and derivative of the series to result[0] and result[1] a block of
+		 * terms at a time with {@code SeriesKernel}
+		 */
+		public void accumulateWithDerivativeBlocks(double[] t, double[] result, SeriesKernel kernel) {
+			double[] phase = kernel.phase, sin = kernel.sin, cos = kernel.cos;
+			int numTerms = numActive;
+			
+			double sum = 0, sumDeriv = 0;
+			for (int start=0; start<numTerms; start+=SeriesKernel.BLOCK_SIZE) {
+				int length = Math.min(SeriesKernel.BLOCK_SIZE, numTerms - start);
+				for (int i=0; i<length; i++) {
+					phase[i] = packedPhase[start + i] + packedFrequency[start + i] * t[1];
+				}
+				SeriesKernel.sinCos(phase, sin, cos, length);
+				for (int i=0; i<length; i++) {
+					int k = start + i;
+					sum += packedCoefficient[k] * sin[i];
+					sumDeriv += packedCoefficient[k] * cos[i] * packedFrequency[k];
+				}
+			}
+			
+			result[0] += sum * t[factorExponent];
+			result[1] += sumDeriv * t[factorExponent];
+			if (factorExponent > 0) {
+				result[1] += sum * t[factorExponent-1] * factorExponent;
+			}
+		}
+		
+		/**
+		 * Adds the value and derivative of the series at many times, applying each term to
+		 * every time before moving on to the next
+		 * @param t the powers of time in Julian centuries, with t[k][i] the kth power of the ith time
+		 * @param length the number of times, at most {@code SeriesKernel.BLOCK_SIZE}
+		 * @param value the array to add the value at each time to
+		 * @param derivative the array to add the derivative at each time to
+		 */
+		public void accumulateBatch(double[][] t, int length, double[] value, double[] derivative, SeriesKernel kernel) {
+			double[] phase = kernel.phase, sin = kernel.sin, cos = kernel.cos;
+			double[] t1 = t[1];
+			double[] sum = new double[length], sumDeriv = new double[length];
+			
+			for (int k=0; k<numActive; k++) {
+				double coefficient = packedCoefficient[k];
+				double a0 = packedPhase[k], a1 = packedFrequency[k];
+				for (int i=0; i<length; i++) {
+					phase[i] = a0 + a1*t1[i];
+				}
+				SeriesKernel.sinCos(phase, sin, cos, length);
+				for (int i=0; i<length; i++) {
+					sum[i] += coefficient * sin[i];
+					sumDeriv[i] += coefficient * cos[i] * a1;
+				}
+			}
+			
+			double[] factor = t[factorExponent];
+			for (int i=0; i<length; i++) {
+				value[i] += sum[i] * factor[i];
+				derivative[i] += sumDeriv[i] * factor[i];
+			}
+			if (factorExponent > 0) {
+				double[] factorDeriv = t[factorExponent-1];
+				for (int i=0; i<length; i++) {
+					derivative[i] += sum[i] * factorDeriv[i] * factorExponent;
+				}
+			}
+		}
 	}
 	
 	public class LunarSeries {
@@ -225,6 +524,18 @@ public class LunarTheory {
 			perturbationSeries = new ArrayList<>(11);
 		}
 		
+		/**
+		 * Shares the terms of another theory's series, leaving out those whose coefficients
+		 * are smaller than the threshold
+		 */
+		public LunarSeries(LunarSeries series, double threshold) {
+			mainSeries = new MainSeries(series.mainSeries, threshold);
+			perturbationSeries = new ArrayList<>(series.perturbationSeries.size());
+			for (PerturbationSeries perturbation : series.perturbationSeries) {
+				perturbationSeries.add(new PerturbationSeries(perturbation, threshold));
+			}
+		}
+		
 		public void setMainSeries(MainSeries mainSeries) {
 			this.mainSeries = mainSeries;
 		}
@@ -235,9 +546,17 @@ public class LunarTheory {
 		
 		public double compute(double[] t) {
 			double result = 0;
-			result += mainSeries.compute(t);
-			for (PerturbationSeries series : perturbationSeries) {
-				result += series.compute(t);
+			if (blockEvaluation) {
+				SeriesKernel kernel = scratch.get().kernel;
+				result += mainSeries.computeBlocks(t, kernel);
+				for (PerturbationSeries series : perturbationSeries) {
+					result += series.computeBlocks(t, kernel);
+				}
+			} else {
+				result += mainSeries.compute(t);
+				for (PerturbationSeries series : perturbationSeries) {
+					result += series.compute(t);
+				}
 			}
 			return result;
 		}
@@ -250,6 +569,46 @@ public class LunarTheory {
 			}
 			return result;
 		}
+		
+		/**
+		 * Computes the value and derivative of the series in a single pass
+		 * @param t the powers of time in Julian centuries
+		 * @param result a 2-element array to store the value and derivative in
+		 */
+		public void computeWithDerivative(double[] t, double[] result) {
+			result[0] = 0;
+			result[1] = 0;
+			if (blockEvaluation) {
+				SeriesKernel kernel = scratch.get().kernel;
+				mainSeries.accumulateWithDerivativeBlocks(t, result, kernel);
+				for (PerturbationSeries series : perturbationSeries) {
+					series.accumulateWithDerivativeBlocks(t, result, kernel);
+				}
+			} else {
+				mainSeries.accumulateWithDerivative(t, result);
+				for (PerturbationSeries series : perturbationSeries) {
+					series.accumulateWithDerivative(t, result);
+				}
+			}
+		}
+		
+		/**
+		 * Computes the value and derivative of the series at many times
+		 * @param t the powers of time in Julian centuries, with t[k][i] the kth power of the ith time
+		 * @param length the number of times, at most {@code SeriesKernel.BLOCK_SIZE}
+		 * @param value the array to store the value at each time in
+		 * @param derivative the array to store the derivative at each time in
+		 */
+		public void computeBatch(double[][] t, int length, double[] value, double[] derivative, SeriesKernel kernel) {
+			for (int i=0; i<length; i++) {
+				value[i] = 0;
+				derivative[i] = 0;
+			}
+			mainSeries.accumulateBatch(t, length, value, derivative, kernel);
+			for (PerturbationSeries series : perturbationSeries) {
+				series.accumulateBatch(t, length, value, derivative, kernel);
+			}
+		}
 	}
 	
 	public void loadData() {
@@ -272,10 +631,8 @@ public class LunarTheory {
 			tables[i] = new Table(11, 3);
 		}
 		
-		//Actually reading
-		for (int i=0; i<36; i++) {
-			tables[i].read(i+1);
-		}
+		//Actually reading, one file per task
+		IntStream.range(0, 36).parallel().forEach(i -> tables[i].read(i+1));
 	}
 	
 	public double degreesToRadians(double degrees, double minutes, double seconds) {
@@ -292,12 +649,6 @@ public class LunarTheory {
 		double[] zeta = new double[2];
 		
 		double[] pre = new double[3];
-		double[] coef = new double[7];
-		double[] ilu = new double[4];
-		double[] ipla = new double[11];
-		
-		double[] mainSinArg = new double[5];
-		double[] perturbationSinArg = new double[2];
 		
 		// Parameters
 		
@@ -374,14 +725,24 @@ public class LunarTheory {
 			lunarSeries.add(new LunarSeries());
 		}
 		
-		pre[0] = prec*secondsInRadian - 1e-12;
-		pre[1] = prec*secondsInRadian - 1e-12;
-		pre[2] = prec*semimajorAxis;
+		getThresholds(prec, pre);
 		
-		for (int ific = 0; ific < 36; ific++) {
+		// Each file becomes one series. The files are processed in parallel, and the series
+		// are then added in file order so the sums do not depend on scheduling.
+		MainSeries[] mainSeries = new MainSeries[36];
+		PerturbationSeries[] perturbationSeries = new PerturbationSeries[36];
+		
+		IntStream.range(0, 36).parallel().forEach(ific -> {
 			int itab = ific / 3;
 			int iv = ific % 3;
 			
+			double[] coef = new double[7];
+			double[] ilu = new double[4];
+			double[] ipla = new double[11];
+			
+			double[] mainSinArg = new double[5];
+			double[] perturbationSinArg = new double[2];
+			
 			Table tab = tables[ific];
 			
 			if (itab == 0) {
@@ -414,7 +775,8 @@ public class LunarTheory {
 					if (iv == 2) mainSinArg[0] += Math.PI / 2;
 					series.addTerm(coefficient, mainSinArg);
 				}
-				lunarSeries.get(iv).setMainSeries(series);
+				series.pack();
+				mainSeries[ific] = series;
 			}
 			else if ((itab >= 1 && itab < 3) || (itab >= 7 && itab < 12)) {
 				int exponent = 0;
@@ -444,7 +806,8 @@ public class LunarTheory {
 					}
 					series.addTerm(coefficient, perturbationSinArg);
 				}
-				lunarSeries.get(iv).addPerturbationSeries(series);
+				series.pack();
+				perturbationSeries[ific] = series;
 			}
 			else if (itab >= 3 && itab < 7) {
 				int exponent = 0;
@@ -487,12 +850,101 @@ public class LunarTheory {
 					}
 					series.addTerm(coefficient, perturbationSinArg);
 				}
-				lunarSeries.get(iv).addPerturbationSeries(series);
+				series.pack();
+				perturbationSeries[ific] = series;
+			}
+		});
+		
+		for (int ific = 0; ific < 36; ific++) {
+			if (mainSeries[ific] != null) {
+				lunarSeries.get(ific % 3).setMainSeries(mainSeries[ific]);
+			} else {
+				lunarSeries.get(ific % 3).addPerturbationSeries(perturbationSeries[ific]);
+			}
+		}
+	}
+	
+	/**
+	 * Counts the leading entries of an array sorted by decreasing absolute value whose
+	 * absolute values are at least the threshold
+	 */
+	private static int countAbove(double[] sorted, double threshold) {
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (Math.abs(sorted[mid]) >= threshold) {
+				low = mid + 1;
+			} else {
+				high = mid;
 			}
 		}
+		return low;
+	}
+	
+	/**
+	 * Computes the smallest coefficient kept in each of the three series for a precision
+	 * @param prec the precision in radians for longitude and latitude, and as a fraction of the semimajor axis for distance
+	 * @param pre a 3-element array to store the thresholds in
+	 */
+	private void getThresholds(double prec, double[] pre) {
+		pre[0] = prec*secondsInRadian - 1e-12;
+		pre[1] = prec*secondsInRadian - 1e-12;
+		pre[2] = prec*semimajorAxis;
+	}
+	
+	/**
+	 * Returns a theory with the series truncated to a lower precision, without regenerating
+	 * them. The two theories share their terms, so this is cheap, and each can be evaluated
+	 * on any thread without affecting the other. Terms left out when the series were
+	 * generated cannot be restored, so generate them with the smallest precision needed.
+	 * @param prec the precision in radians for longitude and latitude, and as a fraction of the semimajor axis for distance
+	 * @return the truncated theory
+	 */
+	public LunarTheory truncate(double prec) {
+		double[] pre = new double[3];
+		getThresholds(prec, pre);
+		
+		LunarTheory truncated = new LunarTheory();
+		truncated.tables = tables;
+		truncated.blockEvaluation = blockEvaluation;
+		for (int i=0; i<3; i++) {
+			truncated.eclipticAngles[i] = eclipticAngles[i].clone();
+		}
+		truncated.lunarSeries = new ArrayList<>(3);
+		for (int i=0; i<3; i++) {
+			truncated.lunarSeries.add(truncated.new LunarSeries(lunarSeries.get(i), pre[i]));
+		}
+		return truncated;
+	}
+	
+	/**
+	 * Chooses whether the series are evaluated a block of terms at a time with the
+	 * polynomial in {@code SeriesKernel}, which the JIT can vectorize, or term by term
+	 * with {@code Math.sin}. The two agree to within a few units in the last place per term.
+	 */
+	public void setBlockEvaluation(boolean blockEvaluation) {
+		this.blockEvaluation = blockEvaluation;
 	}
 	
 	public Vector3 getCoordinates(double[] seriesResult, double[] t) {
+		double[] position = new double[3];
+		getCoordinates(seriesResult, t, position);
+		return new Vector3(position);
+	}
+	
+	public Vector3 getCoordinatesDeriv(double[] seriesResult, double[] seriesResultDeriv, double[] t) {
+		double[] velocity = new double[3];
+		getCoordinatesAndDeriv(seriesResult, seriesResultDeriv, t, new double[3], velocity);
+		return new Vector3(velocity);
+	}
+	
+	/**
+	 * Converts the results of the three series to rectangular coordinates
+	 * @param seriesResult longitude, latitude, and distance from the series
+	 * @param t the powers of time in Julian centuries
+	 * @param position a 3-element array to store the position in
+	 */
+	public void getCoordinates(double[] seriesResult, double[] t, double[] position) {
 		double longitude = seriesResult[0] / secondsInRadian + eclipticAngles[0][0] + eclipticAngles[0][1]*t[1] + eclipticAngles[0][2]*t[2] + eclipticAngles[0][3]*t[3] + eclipticAngles[0][4]*t[4];
 		double latitude = seriesResult[1] / secondsInRadian;
 		double distance = seriesResult[2] * semimajorAxisCorrected / semimajorAxis;
@@ -510,12 +962,21 @@ public class LunarTheory {
 		pw = pw*ra;
 		qw = qw*ra;
 		
-		return new Vector3(pw2*xPos + pwqw*yPos + pw*zPos,
-				pwqw*xPos + qw2*yPos - qw*zPos,
-				-pw*xPos + qw*yPos + (pw2+qw2-1.0)*zPos);
+		position[0] = pw2*xPos + pwqw*yPos + pw*zPos;
+		position[1] = pwqw*xPos + qw2*yPos - qw*zPos;
+		position[2] = -pw*xPos + qw*yPos + (pw2+qw2-1.0)*zPos;
 	}
 	
-	public Vector3 getCoordinatesDeriv(double[] seriesResult, double[] seriesResultDeriv, double[] t) {
+	/**
+	 * Converts the results of the three series and their derivatives to rectangular
+	 * coordinates and their derivatives, evaluating each trigonometric function once
+	 * @param seriesResult longitude, latitude, and distance from the series
+	 * @param seriesResultDeriv the derivatives of the series with respect to centuries
+	 * @param t the powers of time in Julian centuries
+	 * @param position a 3-element array to store the position in
+	 * @param positionDeriv a 3-element array to store the derivative of the position with respect to centuries
+	 */
+	public void getCoordinatesAndDeriv(double[] seriesResult, double[] seriesResultDeriv, double[] t, double[] position, double[] positionDeriv) {
 		double longitude = seriesResult[0] / secondsInRadian + eclipticAngles[0][0] + eclipticAngles[0][1]*t[1] + eclipticAngles[0][2]*t[2] + eclipticAngles[0][3]*t[3] + eclipticAngles[0][4]*t[4];
 		double latitude = seriesResult[1] / secondsInRadian;
 		double distance = seriesResult[2] * semimajorAxisCorrected / semimajorAxis;
@@ -524,20 +985,23 @@ public class LunarTheory {
 		double latitudeDeriv = seriesResultDeriv[1] / secondsInRadian;
 		double distanceDeriv = seriesResultDeriv[2] * semimajorAxisCorrected / semimajorAxis;
 		
-		double xPos = distance * Math.cos(longitude) * Math.cos(latitude);
-		double yPos = distance * Math.sin(longitude) * Math.cos(latitude);
-		double zPos = distance * Math.sin(latitude);
+		double cosLongitude = Math.cos(longitude), sinLongitude = Math.sin(longitude);
+		double cosLatitude = Math.cos(latitude), sinLatitude = Math.sin(latitude);
 		
-		double xPosDeriv = distanceDeriv * Math.cos(longitude) * Math.cos(latitude)
-				- distance * Math.sin(longitude) * longitudeDeriv * Math.cos(latitude)
-				- distance * Math.cos(longitude) * Math.sin(latitude) * latitudeDeriv;
+		double xPos = distance * cosLongitude * cosLatitude;
+		double yPos = distance * sinLongitude * cosLatitude;
+		double zPos = distance * sinLatitude;
 		
-		double yPosDeriv = distanceDeriv * Math.sin(longitude) * Math.cos(latitude)
-				+ distance * Math.cos(longitude) * longitudeDeriv * Math.cos(latitude)
-				- distance * Math.sin(longitude) * Math.sin(latitude) * latitudeDeriv;
+		double xPosDeriv = distanceDeriv * cosLongitude * cosLatitude
+				- distance * sinLongitude * longitudeDeriv * cosLatitude
+				- distance * cosLongitude * sinLatitude * latitudeDeriv;
 		
-		double zPosDeriv = distanceDeriv * Math.sin(latitude)
-				+ distance * Math.cos(latitude) * latitudeDeriv;
+		double yPosDeriv = distanceDeriv * sinLongitude * cosLatitude
+				+ distance * cosLongitude * longitudeDeriv * cosLatitude
+				- distance * sinLongitude * sinLatitude * latitudeDeriv;
+		
+		double zPosDeriv = distanceDeriv * sinLatitude
+				+ distance * cosLatitude * latitudeDeriv;
 		
 		double pw = (laskarP[0] + laskarP[1]*t[1] + laskarP[2]*t[2] + laskarP[3]*t[3] + laskarP[4]*t[4])*t[1];
 		double qw = (laskarQ[0] + laskarQ[1]*t[1] + laskarQ[2]*t[2] + laskarQ[3]*t[3] + laskarQ[4]*t[4])*t[1];
@@ -556,9 +1020,13 @@ public class LunarTheory {
 		double pwraDeriv = pw*raDeriv + pwDeriv*ra;
 		double qwraDeriv = qw*raDeriv + qwDeriv*ra;
 		
-		return new Vector3(pw2*xPosDeriv + pw2Deriv*xPos + pwqw*yPosDeriv + pwqwDeriv*yPos + pwra*zPosDeriv + pwraDeriv*zPos,
-				pwqw*xPosDeriv + pwqwDeriv*xPos + qw2*yPosDeriv + qw2Deriv*yPos - qwra*zPosDeriv - qwraDeriv*zPos,
-				-pwra*xPosDeriv - pwraDeriv*xPos + qwra*yPosDeriv + qwraDeriv*yPos + (pw2+qw2-1.0)*zPosDeriv + (pw2Deriv+qw2Deriv)*zPos);
+		position[0] = pw2*xPos + pwqw*yPos + pwra*zPos;
+		position[1] = pwqw*xPos + qw2*yPos - qwra*zPos;
+		position[2] = -pwra*xPos + qwra*yPos + (pw2+qw2-1.0)*zPos;
+		
+		positionDeriv[0] = pw2*xPosDeriv + pw2Deriv*xPos + pwqw*yPosDeriv + pwqwDeriv*yPos + pwra*zPosDeriv + pwraDeriv*zPos;
+		positionDeriv[1] = pwqw*xPosDeriv + pwqwDeriv*xPos + qw2*yPosDeriv + qw2Deriv*yPos - qwra*zPosDeriv - qwraDeriv*zPos;
+		positionDeriv[2] = -pwra*xPosDeriv - pwraDeriv*xPos + qwra*yPosDeriv + qwraDeriv*yPos + (pw2+qw2-1.0)*zPosDeriv + (pw2Deriv+qw2Deriv)*zPos;
 	}
 	
 	public Vector3 computeSeriesAtTime(double tjj) {
@@ -580,28 +1048,130 @@ public class LunarTheory {
 	}
 	
 	public Vector3 computeSeriesDerivativeAtTime(double tjj) {
-		double[] result = new double[3];
-		double[] resultDeriv = new double[3];
-		
-		double[] t = new double[5];
+		double[] position = new double[3];
+		double[] positionDeriv = new double[3];
+		computeSeriesAndDerivativeAtTime(tjj, position, positionDeriv);
+		return new Vector3(positionDeriv).times(1.0 / daysInCentury);
+	}
+	
+	private static void setTimePowers(double tjj, double[] t) {
 		t[0] = 1;
-		t[1] = (tjj - julian2000) / daysInCentury;
+		t[1] = (tjj - 2451545.0) / 36525.0;
 		t[2] = t[1] * t[1];
 		t[3] = t[2] * t[1];
 		t[4] = t[3] * t[1];
+	}
+	
+	/**
+	 * Computes the position of the Moon and its derivative with respect to centuries,
+	 * summing each series only once
+	 * @param tjj the Julian date
+	 * @param position a 3-element array to store the position in kilometers
+	 * @param positionDeriv a 3-element array to store the derivative in kilometers per century
+	 */
+	public void computeSeriesAndDerivativeAtTime(double tjj, double[] position, double[] positionDeriv) {
+		Scratch scratch = this.scratch.get();
+		double[] t = scratch.t;
+		setTimePowers(tjj, t);
 		
+		double[] result = scratch.series;
+		double[] resultDeriv = scratch.seriesDeriv;
+		double[] valueAndDeriv = scratch.valueAndDeriv;
 		for (int i=0; i<3; i++) {
-			result[i] = lunarSeries.get(i).compute(t);
-			resultDeriv[i] = lunarSeries.get(i).derivative(t);
+			lunarSeries.get(i).computeWithDerivative(t, valueAndDeriv);
+			result[i] = valueAndDeriv[0];
+			resultDeriv[i] = valueAndDeriv[1];
+		}
+		
+		getCoordinatesAndDeriv(result, resultDeriv, t, position, positionDeriv);
+	}
+	
+	/**
+	 * Computes the geocentric position of the Moon
+	 * @param t the time in seconds since J2000
+	 * @param result a 3-element array to store the position in kilometers
+	 */
+	public void computePosition(double t, double[] result) {
+		Scratch scratch = this.scratch.get();
+		double[] tPowers = scratch.t;
+		setTimePowers(julian2000 + t / 86400.0, tPowers);
+		
+		double[] series = scratch.series;
+		for (int i=0; i<3; i++) {
+			series[i] = lunarSeries.get(i).compute(tPowers);
 		}
 		
-		Vector3 coords = getCoordinatesDeriv(result, resultDeriv, t);
-		return coords.times(1.0 / daysInCentury);
+		getCoordinates(series, tPowers, result);
+	}
+	
+	/**
+	 * Computes the geocentric position and velocity of the Moon in a single pass
+	 * @param t the time in seconds since J2000
+	 * @param position a 3-element array to store the position in kilometers
+	 * @param velocity a 3-element array to store the velocity in kilometers per second
+	 */
+	public void computePositionAndVelocity(double t, double[] position, double[] velocity) {
+		computeSeriesAndDerivativeAtTime(julian2000 + t / 86400.0, position, velocity);
+		for (int i=0; i<3; i++) {
+			velocity[i] /= daysInCentury * 86400.0;
+		}
+	}
+	
+	/**
+	 * Computes the geocentric position and velocity of the Moon at many times, which is
+	 * much faster than calling {@code computePositionAndVelocity} for each time. The times
+	 * are processed in blocks, and each term is applied to a whole block at once.
+	 * @param times the times in seconds since J2000
+	 * @param out an array of 6 times as many elements as times to store the position in
+	 * kilometers and the velocity in kilometers per second for each time
+	 */
+	public void evaluate(double[] times, double[] out) {
+		SeriesKernel kernel = scratch.get().kernel;
+		int blockSize = SeriesKernel.BLOCK_SIZE;
+		double[][] t = new double[5][blockSize];
+		double[][] value = new double[3][blockSize];
+		double[][] derivative = new double[3][blockSize];
+		
+		double[] tPowers = new double[5];
+		double[] result = new double[3], resultDeriv = new double[3];
+		double[] position = new double[3], velocity = new double[3];
+		
+		for (int start=0; start<times.length; start+=blockSize) {
+			int length = Math.min(blockSize, times.length - start);
+			for (int i=0; i<length; i++) {
+				setTimePowers(julian2000 + times[start + i] / 86400.0, tPowers);
+				for (int k=0; k<5; k++) {
+					t[k][i] = tPowers[k];
+				}
+			}
+			
+			for (int v=0; v<3; v++) {
+				lunarSeries.get(v).computeBatch(t, length, value[v], derivative[v], kernel);
+			}
+			
+			for (int i=0; i<length; i++) {
+				for (int k=0; k<5; k++) {
+					tPowers[k] = t[k][i];
+				}
+				for (int v=0; v<3; v++) {
+					result[v] = value[v][i];
+					resultDeriv[v] = derivative[v][i];
+				}
+				getCoordinatesAndDeriv(result, resultDeriv, tPowers, position, velocity);
+				
+				int offset = (start + i) * 6;
+				for (int v=0; v<3; v++) {
+					out[offset + v] = position[v];
+					out[offset + 3 + v] = velocity[v] / (daysInCentury * 86400.0);
+				}
+			}
+		}
 	}
 	
 	public void perturbOrbit(Orbit orbit, double t) {
-		Vector3 pos = computeSeriesAtTime(julian2000 + t / 86400.0);
-		Vector3 vel = computeSeriesDerivativeAtTime(julian2000 + t / 86400.0).times(1.0 / 86400.0);
-		orbit.setParamsFromPositionAndVelocity(pos, vel);
+		double[] position = new double[3];
+		double[] velocity = new double[3];
+		computePositionAndVelocity(t, position, velocity);
+		orbit.setParamsFromPositionAndVelocity(position, velocity);
 	}
 }
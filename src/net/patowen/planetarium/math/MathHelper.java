@@ -53,17 +53,15 @@ public class MathHelper {
 		return Math.floorMod(x-lower, n)+lower;
 	}
 	
+	/**
+	 * Solves Kepler's equation for an elliptic orbit
+	 * @param meanAnomaly
+	 * @param eccentricity
+	 * @return the eccentric anomaly, in the range [-pi, pi]
+	 * @see KeplerSolver
+	 */
 	public static double getEccentricAnomaly(double meanAnomaly, double eccentricity) {
-		meanAnomaly -= Math.floor(meanAnomaly/(Math.PI*2))*Math.PI*2;
-		double guess = meanAnomaly;
-		if (eccentricity > 0.8) guess = Math.PI;
-		while (true) {
-			double correction = (guess - (meanAnomaly + eccentricity * Math.sin(guess))) /
-					(1 - eccentricity*Math.cos(guess));
-			guess -= correction;
-			if (Math.abs(correction) < 1e-10) break;
-		}
-		return guess;
+		return KeplerSolver.solve(meanAnomaly, eccentricity);
 	}
 	
 	private static int[] monthTable = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
@@ -1,14 +1,14 @@
 package net.patowen.planetarium.math;
 
 public class MoonOrbit extends Orbit {
-	private LunarTheory lunarTheory;
+	private Ephemeris ephemeris;
 	
-	public MoonOrbit(LunarTheory lunarTheory) {
-		this.lunarTheory = lunarTheory;
+	public MoonOrbit(Ephemeris ephemeris) {
+		this.ephemeris = ephemeris;
 	}
 	
 	public void setParametersFromTime(double time) {
-		lunarTheory.perturbOrbit(this, time);
+		ephemeris.perturbOrbit(this, time);
 		setStartTime(time);
 	}
 }
@@ -1,6 +1,9 @@
 package net.patowen.planetarium.math;
 
 public abstract class Orbit {
+	// Nearly parabolic orbits have a semimajor axis too ill-conditioned for Kepler's equation
+	private static final double MAX_ELLIPTIC_ECCENTRICITY = 0.99;
+	
 	protected double eccentricity;
 	protected double semimajorAxis;
 	protected double inclination;
@@ -10,104 +13,207 @@ public abstract class Orbit {
 	protected double startMeanAnomaly;
 	protected double startTime;
 	
+	// Chosen for the type of orbit, and updated the first time it is needed after the elements change
+	private OrbitPropagator propagator;
+	private boolean propagatorValid;
+	private final EllipticPropagator ellipticPropagator = new EllipticPropagator();
+	private UniversalPropagator universalPropagator;
+	
+	// The state the elements were last computed from, which non-elliptic orbits propagate from directly
+	private final double[] startState = new double[6];
+	private boolean startStateValid;
+	
+	private final double[] perifocal = new double[6];
+	private final double[] scratchState = new double[6];
+	
 	public void setSemimajorAxis(double semimajorAxis) {
 		this.semimajorAxis = semimajorAxis;
+		elementsChanged();
 	}
 	
 	public void setEccentricity(double eccentricity) {
 		this.eccentricity = eccentricity;
+		elementsChanged();
 	}
 	
 	public void setInclination(double inclination) {
 		this.inclination = inclination;
+		elementsChanged();
 	}
 	
 	public void setAscendingNodeLongitude(double ascendingNodeLongitude) {
 		this.ascendingNodeLongitude = ascendingNodeLongitude;
+		elementsChanged();
 	}
 	
 	public void setArgumentOfPeriapsis(double argumentOfPeriapsis) {
 		this.argumentOfPeriapsis = argumentOfPeriapsis;
+		elementsChanged();
 	}
 	
 	public void setGaram(double garam) {
 		this.garam = garam;
+		propagatorValid = false;
 	}
 	
 	public void setStartMeanAnomaly(double startMeanAnomaly) {
 		this.startMeanAnomaly = startMeanAnomaly;
+		elementsChanged();
 	}
 	
 	public void setStartTime(double startTime) {
 		this.startTime = startTime;
+		propagatorValid = false;
 	}
 	
 	public abstract void setParametersFromTime(double time);
 	
-	private double sqr(double x) {
-		return x*x;
+	private void elementsChanged() {
+		propagatorValid = false;
+		startStateValid = false;
+	}
+	
+	/**
+	 * Returns the propagator for the current elements. Elliptic orbits solve Kepler's equation, and
+	 * other orbits, including nearly parabolic ellipses, use universal variables, starting from the
+	 * state the elements were computed from, or otherwise from periapsis. Parabolic orbits have no
+	 * finite semimajor axis, so they can only be set from a position and velocity.
+	 */
+	OrbitPropagator getPropagator() {
+		if (propagatorValid) return propagator;
+		
+		computePerifocalAxes();
+		if (eccentricity < MAX_ELLIPTIC_ECCENTRICITY) {
+			ellipticPropagator.set(perifocal, semimajorAxis, eccentricity, garam, startMeanAnomaly, startTime);
+			propagator = ellipticPropagator;
+		} else {
+			if (universalPropagator == null) universalPropagator = new UniversalPropagator();
+			if (startStateValid) {
+				universalPropagator.set(garam, startState, 0, startTime);
+			} else {
+				// Start from periapsis, since the mean anomaly of an ellipse or hyperbola grows
+				// linearly from zero there
+				double periapsisDistance = semimajorAxis*(1-eccentricity);
+				double periapsisSpeed = Math.sqrt(garam*(1+eccentricity)/periapsisDistance);
+				double meanMotion = Math.sqrt(garam / Math.abs(semimajorAxis*semimajorAxis*semimajorAxis));
+				for (int i=0; i<3; i++) {
+					scratchState[i] = perifocal[i]*periapsisDistance;
+					scratchState[i+3] = perifocal[i+3]*periapsisSpeed;
+				}
+				universalPropagator.set(garam, scratchState, 0, startTime - startMeanAnomaly/meanMotion);
+			}
+			propagator = universalPropagator;
+		}
+		propagatorValid = true;
+		return propagator;
+	}
+	
+	/**
+	 * Computes the directions of periapsis and of motion at periapsis, the first two columns of
+	 * the product of rotations by the longitude of the ascending node, the inclination, and the
+	 * argument of periapsis
+	 */
+	private void computePerifocalAxes() {
+		double cosNode = Math.cos(ascendingNodeLongitude), sinNode = Math.sin(ascendingNodeLongitude);
+		double cosInc = Math.cos(inclination), sinInc = Math.sin(inclination);
+		double cosPeri = Math.cos(argumentOfPeriapsis), sinPeri = Math.sin(argumentOfPeriapsis);
+		
+		perifocal[0] = cosNode*cosPeri - sinNode*sinPeri*cosInc;
+		perifocal[1] = sinNode*cosPeri + cosNode*sinPeri*cosInc;
+		perifocal[2] = sinPeri*sinInc;
+		perifocal[3] = -cosNode*sinPeri - sinNode*cosPeri*cosInc;
+		perifocal[4] = -sinNode*sinPeri + cosNode*cosPeri*cosInc;
+		perifocal[5] = cosPeri*sinInc;
+	}
+	
+	/**
+	 * Computes the position and velocity at the given time without allocating anything
+	 * @param time the time in seconds since J2000
+	 * @param state a 6-element array to store the position and then the velocity in
+	 */
+	public void getState(double time, double[] state) {
+		getPropagator().getState(time, state, 0);
 	}
 	
-	private double cube(double x) {
-		return x*x*x;
+	/**
+	 * Computes the position at the given time without allocating anything
+	 * @param time the time in seconds since J2000
+	 * @param result the vector to store the position in
+	 */
+	public void getPosition(double time, Vector3 result) {
+		getPropagator().getPosition(time, result);
 	}
 	
-	private double getEccentricAnomaly(double time) {
-		double orbitalFrequency = Math.sqrt(garam / cube(semimajorAxis));
-		double meanAnomaly = startMeanAnomaly + (time - startTime)*orbitalFrequency;
-		return MathHelper.getEccentricAnomaly(meanAnomaly, eccentricity);
+	/**
+	 * Computes the velocity at the given time without allocating anything
+	 * @param time the time in seconds since J2000
+	 * @param result the vector to store the velocity in
+	 */
+	public void getVelocity(double time, Vector3 result) {
+		getPropagator().getState(time, scratchState, 0);
+		result.x = scratchState[3];
+		result.y = scratchState[4];
+		result.z = scratchState[5];
 	}
 	
 	public Vector3 getPosition(double time) {
-		double eccentricAnomaly = getEccentricAnomaly(time);
-		double semiminor = semimajorAxis*Math.sqrt(1-sqr(eccentricity));
-		double ellipseCenter = -semimajorAxis*eccentricity;
-		
-		Vector3 pos = new Vector3(ellipseCenter + semimajorAxis*Math.cos(eccentricAnomaly), semiminor*Math.sin(eccentricAnomaly), 0);
-		pos = Transform.rotation(new Vector3(0, 0, 1), argumentOfPeriapsis).transformVector(pos);
-		pos = Transform.rotation(new Vector3(1, 0, 0), inclination).transformVector(pos);
-		pos = Transform.rotation(new Vector3(0, 0, 1), ascendingNodeLongitude).transformVector(pos);
+		Vector3 pos = new Vector3();
+		getPosition(time, pos);
 		return pos;
 	}
 	
 	public Vector3 getVelocity(double time) {
-		double eccentricAnomaly = getEccentricAnomaly(time);
-		double semiminor = semimajorAxis*Math.sqrt(1-sqr(eccentricity));
-		double ellipseCenter = -semimajorAxis*eccentricity;
-		
-		Vector3 pos = new Vector3(ellipseCenter + semimajorAxis*Math.cos(eccentricAnomaly), semiminor*Math.sin(eccentricAnomaly), 0);
-		double speed = Math.sqrt(garam * (2 / pos.magnitude() - 1/semimajorAxis));
-		
-		Vector3 vel = new Vector3(-semimajorAxis*Math.sin(eccentricAnomaly), semiminor*Math.cos(eccentricAnomaly), 0);
-		vel.normalize();
-		vel = vel.times(speed);
-		vel = Transform.rotation(new Vector3(0, 0, 1), argumentOfPeriapsis).transformVector(vel);
-		vel = Transform.rotation(new Vector3(1, 0, 0), inclination).transformVector(vel);
-		vel = Transform.rotation(new Vector3(0, 0, 1), ascendingNodeLongitude).transformVector(vel);
-		
+		Vector3 vel = new Vector3();
+		getVelocity(time, vel);
 		return vel;
 	}
 	
-	protected void setParamsFromPositionAndVelocity(Vector3 position, Vector3 velocity) {
+	/**
+	 * Sets the elements to those of the orbit through the given state, without allocating
+	 * anything, since this runs every step for orbits taken from an ephemeris
+	 * @param position a 3-element array with the position
+	 * @param velocity a 3-element array with the velocity
+	 */
+	protected void setParamsFromPositionAndVelocity(double[] position, double[] velocity) {
 		double mu = garam;
-		Vector3 angularMomentum = position.cross(velocity);
-		Vector3 nodeVector = new Vector3(0, 0, 1).cross(angularMomentum);
+		double rx = position[0], ry = position[1], rz = position[2];
+		double vx = velocity[0], vy = velocity[1], vz = velocity[2];
+		double r = Math.sqrt(rx*rx + ry*ry + rz*rz);
+		double speedSquared = vx*vx + vy*vy + vz*vz;
+		double radialSpeed = rx*vx + ry*vy + rz*vz; // Times r
 		
-		Vector3 eccentricityVector = position.times(velocity.squared() - mu / position.magnitude()).minus(velocity.times(position.dot(velocity))).times(1.0/mu);
-		eccentricity = eccentricityVector.magnitude();
+		double hx = ry*vz - rz*vy, hy = rz*vx - rx*vz, hz = rx*vy - ry*vx; // Angular momentum
+		double nx = -hy, ny = hx; // The node vector, the cross product of the z axis with the angular momentum
 		
-		double energy = velocity.squared() * 0.5 - mu / position.magnitude();
+		double c = (speedSquared - mu / r) / mu, d = radialSpeed / mu;
+		double ex = rx*c - vx*d, ey = ry*c - vy*d, ez = rz*c - vz*d;
+		eccentricity = Math.sqrt(ex*ex + ey*ey + ez*ez);
+		
+		double energy = speedSquared * 0.5 - mu / r;
 		semimajorAxis = -mu / (energy * 2);
 		
-		inclination = Math.acos(angularMomentum.z / angularMomentum.magnitude());
-		ascendingNodeLongitude = Math.atan2(nodeVector.y, nodeVector.x);
-		argumentOfPeriapsis = Math.acos(nodeVector.dot(eccentricityVector) / (nodeVector.magnitude() * eccentricity));
-		if (eccentricityVector.z < 0) argumentOfPeriapsis = Math.PI*2 - argumentOfPeriapsis;
-		double cosTrueAnomaly = eccentricityVector.dot(position) / (eccentricity * position.magnitude());
+		inclination = Math.acos(hz / Math.sqrt(hx*hx + hy*hy + hz*hz));
+		ascendingNodeLongitude = Math.atan2(ny, nx);
+		argumentOfPeriapsis = Math.acos((nx*ex + ny*ey) / (Math.sqrt(nx*nx + ny*ny) * eccentricity));
+		if (ez < 0) argumentOfPeriapsis = Math.PI*2 - argumentOfPeriapsis;
+		double cosTrueAnomaly = (ex*rx + ey*ry + ez*rz) / (eccentricity * r);
 		
 		double cosEccentricAnomaly = (eccentricity + cosTrueAnomaly) / (1 + eccentricity * cosTrueAnomaly);
-		double eccentricAnomaly = Math.acos(cosEccentricAnomaly);
-		if (position.dot(velocity) < 0) eccentricAnomaly = Math.PI*2 - eccentricAnomaly;
-		startMeanAnomaly = eccentricAnomaly - eccentricity * Math.sin(eccentricAnomaly);
+		if (eccentricity < 1) {
+			double eccentricAnomaly = Math.acos(cosEccentricAnomaly);
+			if (radialSpeed < 0) eccentricAnomaly = Math.PI*2 - eccentricAnomaly;
+			startMeanAnomaly = eccentricAnomaly - eccentricity * Math.sin(eccentricAnomaly);
+			ellipticPropagator.setPreviousSolution(startMeanAnomaly, eccentricAnomaly);
+		} else {
+			// The same relation gives the hyperbolic cosine of the hyperbolic anomaly
+			double hyperbolicAnomaly = MathHelper.acosh(Math.max(1, cosEccentricAnomaly));
+			if (radialSpeed < 0) hyperbolicAnomaly = -hyperbolicAnomaly;
+			startMeanAnomaly = eccentricity * Math.sinh(hyperbolicAnomaly) - hyperbolicAnomaly;
+		}
+		
+		System.arraycopy(position, 0, startState, 0, 3);
+		System.arraycopy(velocity, 0, startState, 3, 3);
+		startStateValid = true;
+		propagatorValid = false;
 	}
 }
@@ -0,0 +1,21 @@
+package net.patowen.planetarium.math;
+
+/**
+ * Computes the state of an orbit at any time. Each {@code Orbit} picks the propagator for
+ * its type of orbit whenever its elements change, so evaluating it does not branch on the type.
+ * @author Patrick Owen
+ */
+interface OrbitPropagator {
+	/**
+	 * @param time the time in seconds since J2000
+	 * @param state the array to store the position and then the velocity in
+	 * @param offset the index of the first of the six values to store
+	 */
+	void getState(double time, double[] state, int offset);
+	
+	/**
+	 * @param time the time in seconds since J2000
+	 * @param result the vector to store the position in
+	 */
+	void getPosition(double time, Vector3 result);
+}
@@ -1,14 +1,14 @@
 package net.patowen.planetarium.math;
 
 public class PlanetOrbit extends Orbit {
-	private Vsop vsop;
+	private Ephemeris ephemeris;
 	
-	public PlanetOrbit(Vsop vsop) {
-		this.vsop = vsop;
+	public PlanetOrbit(Ephemeris ephemeris) {
+		this.ephemeris = ephemeris;
 	}
 	
 	public void setParametersFromTime(double time) {
-		vsop.perturbOrbit(this, time);
+		ephemeris.perturbOrbit(this, time);
 		setStartTime(time);
 	}
 }
@@ -26,6 +26,60 @@ public class PlanetRotation extends Rotation {
 		return earthRotation;
 	}
 	
+	/**
+	 * Returns the IAU rotation model of a planet other than Earth, without the small
+	 * periodic terms
+	 * @param planet the VSOP2013 planet number
+	 */
+	public static PlanetRotation getPlanetRotation(int planet) {
+		PlanetRotation rotation = new PlanetRotation();
+		switch (planet) {
+		case VsopCatalog.MERCURY:
+			rotation.raPoly = new double[] {281.0097, -0.0328, 0.};
+			rotation.decPoly = new double[] {61.4143, -0.0049, 0.};
+			rotation.pmPoly = new double[] {329.5469, 6.1385025, 0.};
+			break;
+		case VsopCatalog.VENUS:
+			rotation.raPoly = new double[] {272.76, 0., 0.};
+			rotation.decPoly = new double[] {67.16, 0., 0.};
+			rotation.pmPoly = new double[] {160.20, -1.4813688, 0.};
+			break;
+		case VsopCatalog.MARS:
+			rotation.raPoly = new double[] {317.68143, -0.1061, 0.};
+			rotation.decPoly = new double[] {52.88650, -0.0609, 0.};
+			rotation.pmPoly = new double[] {176.630, 350.89198226, 0.};
+			break;
+		case VsopCatalog.JUPITER:
+			rotation.raPoly = new double[] {268.056595, -0.006499, 0.};
+			rotation.decPoly = new double[] {64.495303, 0.002413, 0.};
+			rotation.pmPoly = new double[] {284.95, 870.5360000, 0.};
+			break;
+		case VsopCatalog.SATURN:
+			rotation.raPoly = new double[] {40.589, -0.036, 0.};
+			rotation.decPoly = new double[] {83.537, -0.004, 0.};
+			rotation.pmPoly = new double[] {38.90, 810.7939024, 0.};
+			break;
+		case VsopCatalog.URANUS:
+			rotation.raPoly = new double[] {257.311, 0., 0.};
+			rotation.decPoly = new double[] {-15.175, 0., 0.};
+			rotation.pmPoly = new double[] {203.81, -501.1600928, 0.};
+			break;
+		case VsopCatalog.NEPTUNE:
+			rotation.raPoly = new double[] {299.36, 0., 0.};
+			rotation.decPoly = new double[] {43.46, 0., 0.};
+			rotation.pmPoly = new double[] {249.978, 541.1397757, 0.};
+			break;
+		case VsopCatalog.PLUTO:
+			rotation.raPoly = new double[] {132.993, 0., 0.};
+			rotation.decPoly = new double[] {-6.163, 0., 0.};
+			rotation.pmPoly = new double[] {302.695, 56.3625225, 0.};
+			break;
+		default:
+			throw new IllegalArgumentException("No rotation model for planet " + planet);
+		}
+		return rotation;
+	}
+	
 	public static PlanetRotation getMoonRotation() {
 		PlanetRotation earthRotation = new PlanetRotation();
 		earthRotation.raPoly = new double[] {270., 0., 0.};
@@ -0,0 +1,70 @@
+package net.patowen.planetarium.math;
+
+import java.util.ArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A fixed set of copies of a series truncated to different precisions, each with its own
+ * {@link ChebyshevCache}. Every tier is built up front, so choosing one, even every frame,
+ * only moves a reference, and segments fitted at one precision are never mixed with another.
+ * @author Patrick Owen
+ * @param <T> the type of the series
+ */
+class PrecisionTiers<T> {
+	/**
+	 * The series truncated to one precision, with the segments fitted to it
+	 */
+	static class Tier<T> {
+		final double precision;
+		final T series;
+		final ChebyshevCache segments;
+		
+		Tier(double precision, T series, ChebyshevCache segments) {
+			this.precision = precision;
+			this.series = series;
+			this.segments = segments;
+		}
+	}
+	
+	private ArrayList<Tier<T>> tiers; // From the most to the least precise
+	private volatile Tier<T> tier; // Read by the simulator thread and while prefetching
+	
+	/**
+	 * @param full the series at the precision it was loaded with, which is the first tier
+	 * @param precisions the precisions of the other tiers, in increasing order
+	 * @param truncate returns a copy of the full series truncated to a precision
+	 * @param createCache creates the cache that fits segments to one tier's series
+	 */
+	PrecisionTiers(T full, double[] precisions, BiFunction<T, Double, T> truncate, Function<T, ChebyshevCache> createCache) {
+		tiers = new ArrayList<>(precisions.length + 1);
+		tiers.add(new Tier<>(0, full, createCache.apply(full)));
+		for (int i=0; i<precisions.length; i++) {
+			if (precisions[i] <= 0 || (i > 0 && precisions[i] <= precisions[i-1])) {
+				throw new IllegalArgumentException("Precisions must be positive and increasing");
+			}
+			T series = truncate.apply(full, precisions[i]);
+			tiers.add(new Tier<>(precisions[i], series, createCache.apply(series)));
+		}
+		tier = tiers.get(0);
+	}
+	
+	/**
+	 * @return the tier chosen by the last call to {@code select}, or the full series
+	 */
+	Tier<T> get() {
+		return tier;
+	}
+	
+	/**
+	 * Chooses the cheapest tier that is at least as precise as requested
+	 * @param precision the largest acceptable precision, with 0 choosing the full series
+	 */
+	void select(double precision) {
+		int i = tiers.size() - 1;
+		while (i > 0 && tiers.get(i).precision > precision) {
+			i--;
+		}
+		tier = tiers.get(i);
+	}
+}
@@ -1,20 +1,38 @@
 package net.patowen.planetarium.math;
 
 public abstract class Rotation {
+	private static final Vector3 X_AXIS = new Vector3(1, 0, 0);
+	private static final Vector3 Z_AXIS = new Vector3(0, 0, 1);
+	
 	private Transform baseTransform;
+	private Transform step;
 	protected double modifiedRightAscension;
 	protected double codeclination;
 	protected double primeMeridian;
 	
 	public Rotation(Transform baseTransform) {
 		this.baseTransform = baseTransform;
+		step = new Transform();
 	}
 	
 	public Transform getTransform() {
-		return baseTransform
-				.transform(Transform.rotation(new Vector3(0, 0, 1), modifiedRightAscension))
-				.transform(Transform.rotation(new Vector3(1, 0, 0), codeclination))
-				.transform(Transform.rotation(new Vector3(0, 0, 1), primeMeridian));
+		Transform result = new Transform();
+		getTransform(result);
+		return result;
+	}
+	
+	/**
+	 * Stores the transformation in an existing {@code Transform}
+	 * @param result the transformation to store the result in
+	 */
+	public void getTransform(Transform result) {
+		result.set(baseTransform);
+		step.setRotation(Z_AXIS, modifiedRightAscension);
+		result.setProduct(result, step);
+		step.setRotation(X_AXIS, codeclination);
+		result.setProduct(result, step);
+		step.setRotation(Z_AXIS, primeMeridian);
+		result.setProduct(result, step);
 	}
 	
 	public abstract void setParametersFromTime(double time);
@@ -0,0 +1,73 @@
+package net.patowen.planetarium.math;
+
+/**
+ * Evaluates sines and cosines of whole blocks of phases with a polynomial instead of
+ * {@code Math.sin} and {@code Math.cos}. The kernel has no branches or calls, so the JIT can
+ * compile each loop into SIMD instructions. Series are summed by filling {@code phase} for a
+ * block of terms, calling {@code sinCos}, and then combining the results with the coefficients.
+ * The error is within a few units in the last place of 1 for any phase below about 1e8 radians.
+ * @author Patrick Owen
+ */
+public class SeriesKernel {
+	public static final int BLOCK_SIZE = 128;
+	
+	// 2 pi split into three parts so that k times each of the first two is exact for |k| < 2^26
+	private static final double TWO_PI_A = Double.longBitsToDouble(Double.doubleToRawLongBits(2 * Math.PI) & 0xFFFFFFFFF8000000L);
+	private static final double TWO_PI_B = 2 * Math.PI - TWO_PI_A;
+	private static final double TWO_PI_C = 2.4492935982947064e-16;
+	private static final double INV_TWO_PI = 1 / (2 * Math.PI);
+	
+	// Taylor coefficients, accurate to double precision on [-pi/4, pi/4]
+	private static final double S1 = -1.0/6, S2 = 1.0/120, S3 = -1.0/5040, S4 = 1.0/362880,
+			S5 = -1.0/39916800, S6 = 1.0/6227020800.0, S7 = -1.0/1307674368000.0, S8 = 1.0/355687428096000.0;
+	private static final double C1 = -1.0/2, C2 = 1.0/24, C3 = -1.0/720, C4 = 1.0/40320,
+			C5 = -1.0/3628800, C6 = 1.0/479001600, C7 = -1.0/87178291200.0, C8 = 1.0/20922789888000.0;
+	
+	final double[] phase, sin, cos;
+	
+	/**
+	 * Creates scratch storage for one block. Each thread evaluating series needs its own.
+	 */
+	public SeriesKernel() {
+		phase = new double[BLOCK_SIZE];
+		sin = new double[BLOCK_SIZE];
+		cos = new double[BLOCK_SIZE];
+	}
+	
+	/**
+	 * Computes the sine and cosine of each phase. The phase is reduced to [-pi, pi], a
+	 * polynomial is evaluated at a quarter of it, and the angle is doubled twice. Each step
+	 * is a separate loop, since the JIT only vectorizes loops with small bodies.
+	 * @param phase the angles in radians
+	 * @param sin the array to store the sines in
+	 * @param cos the array to store the cosines in
+	 * @param length the number of angles
+	 */
+	public static void sinCos(double[] phase, double[] sin, double[] cos, int length) {
+		// The quarter angle is kept in sin until the sine polynomial replaces it
+		for (int i=0; i<length; i++) {
+			double x = phase[i];
+			double k = Math.rint(x * INV_TWO_PI);
+			sin[i] = (((x - k * TWO_PI_A) - k * TWO_PI_B) - k * TWO_PI_C) * 0.25;
+		}
+		
+		for (int i=0; i<length; i++) {
+			double z = sin[i] * sin[i];
+			cos[i] = 1 + z * (C1 + z * (C2 + z * (C3 + z * (C4 + z * (C5 + z * (C6 + z * (C7 + z * C8)))))));
+		}
+		
+		for (int i=0; i<length; i++) {
+			double q = sin[i];
+			double z = q * q;
+			sin[i] = q + q * z * (S1 + z * (S2 + z * (S3 + z * (S4 + z * (S5 + z * (S6 + z * (S7 + z * S8)))))));
+		}
+		
+		for (int i=0; i<length; i++) {
+			double s = sin[i], c = cos[i];
+			double s2 = 2 * s * c;
+			double c2 = (c - s) * (c + s);
+			sin[i] = 2 * s2 * c2;
+			cos[i] = (c2 - s2) * (c2 + s2);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package net.patowen.planetarium.math;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads whitespace-separated numbers from an ASCII table without creating a string per
+ * line or token. A minus sign also starts a new token, since columns in the ELP files can
+ * run together when a value is negative.
+ * @author Patrick Owen
+ */
+public class TableTokenizer {
+	// Powers of ten that are exactly representable, for fast decimal parsing
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	
+	private byte[] data;
+	private int length;
+	private int pos;
+	
+	public TableTokenizer(byte[] data, int length) {
+		this.data = data;
+		this.length = length;
+		pos = 0;
+	}
+	
+	/**
+	 * Reads the whole stream into memory and closes it
+	 */
+	public static TableTokenizer fromStream(InputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(65536);
+		byte[] buffer = new byte[65536];
+		try {
+			int count;
+			while ((count = stream.read(buffer)) != -1) {
+				bytes.write(buffer, 0, count);
+			}
+		} finally {
+			stream.close();
+		}
+		byte[] data = bytes.toByteArray();
+		return new TableTokenizer(data, data.length);
+	}
+	
+	/**
+	 * Moves to the start of the next line
+	 */
+	public void nextLine() {
+		while (pos < length && data[pos] != '\n') {
+			pos++;
+		}
+		if (pos < length) pos++;
+	}
+	
+	/**
+	 * Skips blank lines
+	 * @return whether another line with content remains
+	 */
+	public boolean hasNextLine() {
+		while (pos < length) {
+			int lineEnd = pos;
+			while (lineEnd < length && data[lineEnd] != '\n' && isWhitespace(data[lineEnd])) {
+				lineEnd++;
+			}
+			if (lineEnd < length && data[lineEnd] != '\n') return true;
+			pos = lineEnd < length ? lineEnd + 1 : lineEnd;
+		}
+		return false;
+	}
+	
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+	
+	/**
+	 * Finds the next token on the current line
+	 * @return the index just past the end of the token
+	 */
+	private int nextToken() {
+		while (pos < length && isWhitespace(data[pos]) && data[pos] != '\n') {
+			pos++;
+		}
+		if (pos >= length || data[pos] == '\n') {
+			throw new NumberFormatException("Missing value in table");
+		}
+		
+		int end = pos + 1;
+		while (end < length && !isWhitespace(data[end]) && data[end] != '-') {
+			end++;
+		}
+		return end;
+	}
+	
+	public int nextInt() {
+		int end = nextToken();
+		int i = pos;
+		boolean negative = false;
+		if (data[i] == '-' || data[i] == '+') {
+			negative = data[i] == '-';
+			i++;
+		}
+		if (i == end) throw new NumberFormatException(tokenString(end));
+		
+		int result = 0;
+		for (; i<end; i++) {
+			int digit = data[i] - '0';
+			if (digit < 0 || digit > 9) throw new NumberFormatException(tokenString(end));
+			result = result * 10 + digit;
+		}
+		pos = end;
+		return negative ? -result : result;
+	}
+	
+	/**
+	 * Parses plain decimals directly, which is exact when there are at most 15 significant
+	 * digits, and falls back to {@code Double.parseDouble} for anything else
+	 */
+	public double nextDouble() {
+		int end = nextToken();
+		int i = pos;
+		boolean negative = false;
+		if (data[i] == '-' || data[i] == '+') {
+			negative = data[i] == '-';
+			i++;
+		}
+		
+		long mantissa = 0;
+		int numDigits = 0, fractionDigits = 0;
+		boolean seenPoint = false, seenDigit = false, simple = true;
+		for (; i<end; i++) {
+			byte b = data[i];
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				seenDigit = true;
+				if (mantissa != 0) numDigits++;
+				if (seenPoint) fractionDigits++;
+			} else if (b == '.' && !seenPoint) {
+				seenPoint = true;
+			} else {
+				simple = false;
+				break;
+			}
+		}
+		
+		double result;
+		if (simple && seenDigit && numDigits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+			result = mantissa / POWERS_OF_TEN[fractionDigits];
+			if (negative) result = -result;
+		} else {
+			result = Double.parseDouble(tokenString(end));
+		}
+		pos = end;
+		return result;
+	}
+	
+	private String tokenString(int end) {
+		return new String(data, pos, end - pos, StandardCharsets.US_ASCII);
+	}
+}
@@ -1,5 +1,11 @@
 package net.patowen.planetarium.math;
 
+/**
+ * An affine transformation, stored as the images of the three axes and of the origin. Each
+ * method that returns a new {@code Transform} or {@code Vector3} has an in-place counterpart
+ * that writes into existing objects, for code that runs every frame.
+ * @author Patrick Owen
+ */
 public class Transform {
 	public Vector3 x;
 	public Vector3 y;
@@ -17,41 +23,106 @@ public class Transform {
 		this(new Vector3(t.x), new Vector3(t.y), new Vector3(t.z), new Vector3(t.w));
 	}
 	
+	/**
+	 * Constructs the identity transformation
+	 */
+	public Transform() {
+		this(new Vector3(1, 0, 0), new Vector3(0, 1, 0), new Vector3(0, 0, 1), new Vector3(0, 0, 0));
+	}
+	
 	public static Transform identity() {
-		return new Transform(
-			new Vector3(1, 0, 0),
-			new Vector3(0, 1, 0),
-			new Vector3(0, 0, 1),
-			new Vector3(0, 0, 0));
+		return new Transform();
 	}
 	
 	public static Transform translation(Vector3 v) {
-		return new Transform(
-			new Vector3(1, 0, 0),
-			new Vector3(0, 1, 0),
-			new Vector3(0, 0, 1),
-			new Vector3(v.x, v.y, v.z));
+		Transform t = new Transform();
+		t.w.set(v);
+		return t;
 	}
 	
 	public static Transform rotation(Vector3 v, double theta) {
+		Transform t = new Transform();
+		t.setRotation(v, theta);
+		return t;
+	}
+	
+	/**
+	 * Changes the transformation to the same transformation as the argument
+	 */
+	public void set(Transform t) {
+		x.set(t.x);
+		y.set(t.y);
+		z.set(t.z);
+		w.set(t.w);
+	}
+	
+	public void setIdentity() {
+		x.set(1, 0, 0);
+		y.set(0, 1, 0);
+		z.set(0, 0, 1);
+		w.reset();
+	}
+	
+	public void setTranslation(Vector3 v) {
+		x.set(1, 0, 0);
+		y.set(0, 1, 0);
+		z.set(0, 0, 1);
+		w.set(v);
+	}
+	
+	/**
+	 * Changes the transformation to a rotation about the given unit vector. The vector
+	 * may be one of this transformation's own axes.
+	 * @param v a unit vector
+	 * @param theta the angle in radians
+	 */
+	public void setRotation(Vector3 v, double theta) {
 		double xx = v.x, yy = v.y, zz = v.z;
 		double c = Math.cos(theta), s = Math.sin(theta);
 		
-		return new Transform(
-			new Vector3(xx*xx+(1-xx*xx)*c, xx*yy-xx*yy*c+zz*s, xx*zz-xx*zz*c-yy*s),
-			new Vector3(xx*yy-xx*yy*c-zz*s, yy*yy+(1-yy*yy)*c, yy*zz-yy*zz*c+xx*s),
-			new Vector3(xx*zz-xx*zz*c+yy*s, yy*zz-yy*zz*c-xx*s, zz*zz+(1-zz*zz)*c),
-			new Vector3(0, 0, 0));
+		x.set(xx*xx+(1-xx*xx)*c, xx*yy-xx*yy*c+zz*s, xx*zz-xx*zz*c-yy*s);
+		y.set(xx*yy-xx*yy*c-zz*s, yy*yy+(1-yy*yy)*c, yy*zz-yy*zz*c+xx*s);
+		z.set(xx*zz-xx*zz*c+yy*s, yy*zz-yy*zz*c-xx*s, zz*zz+(1-zz*zz)*c);
+		w.reset();
 	}
 	
 	public Transform inverse() {
-		return new Transform(
-			new Vector3(x.x, y.x, z.x),
-			new Vector3(x.y, y.y, z.y),
-			new Vector3(x.z, y.z, z.z),
-			new Vector3(-x.x*w.x - x.y*w.y - x.z*w.z,
-					-y.x*w.x - y.y*w.y - y.z*w.z,
-					-z.x*w.x - z.y*w.y - z.z*w.z));
+		Transform t = new Transform();
+		t.setInverse(this);
+		return t;
+	}
+	
+	/**
+	 * Changes the transformation to the inverse of the argument, which is assumed to be a
+	 * rotation followed by a translation. The argument may be this transformation.
+	 */
+	public void setInverse(Transform t) {
+		double wx = -t.x.x*t.w.x - t.x.y*t.w.y - t.x.z*t.w.z;
+		double wy = -t.y.x*t.w.x - t.y.y*t.w.y - t.y.z*t.w.z;
+		double wz = -t.z.x*t.w.x - t.z.y*t.w.y - t.z.z*t.w.z;
+		
+		double xy = t.x.y, xz = t.x.z, yz = t.y.z;
+		x.set(t.x.x, t.y.x, t.z.x);
+		y.set(xy, t.y.y, t.z.y);
+		z.set(xz, yz, t.z.z);
+		w.set(wx, wy, wz);
+	}
+	
+	/**
+	 * Changes the transformation to one partway between two rotations followed by translations,
+	 * by interpolating each axis linearly and orthonormalizing the result. This is only close to
+	 * the true rotation for small changes, such as those between consecutive steps. Either
+	 * argument may be this transformation.
+	 * @param a the transformation at a fraction of 0
+	 * @param b the transformation at a fraction of 1
+	 * @param t the fraction
+	 */
+	public void setInterpolated(Transform a, Transform b, double t) {
+		x.setInterpolated(a.x, b.x, t);
+		y.setInterpolated(a.y, b.y, t);
+		z.setInterpolated(a.z, b.z, t);
+		w.setInterpolated(a.w, b.w, t);
+		normalize();
 	}
 	
 	public boolean normalize() {
@@ -60,11 +131,11 @@ public class Transform {
 		// Valid vectors are assumed. If this is not the case, NaN's will propagate, and
 		// very bad stuff will happen, such as hidden, hard-to-debug errors.
 		success = x.normalize() && success; // Normalize x
-		y = y.plusMultiple(x, -y.dot(x)); // Separate y from x
-		z = z.plusMultiple(x, -z.dot(x)); // Separate z from x
+		y.addMultipleInPlace(x, -y.dot(x)); // Separate y from x
+		z.addMultipleInPlace(x, -z.dot(x)); // Separate z from x
 		
 		success = y.normalize() && success; // Normalize y
-		z = z.plusMultiple(y, -z.dot(y)); // Separate z from y
+		z.addMultipleInPlace(y, -z.dot(y)); // Separate z from y
 		
 		success = z.normalize() && success; // Normalize z
 		
@@ -72,33 +143,69 @@ public class Transform {
 	}
 	
 	public Vector3 transform(Vector3 v) {
-		return new Vector3(
-			x.x*v.x + y.x*v.y + z.x*v.z + w.x,
-			x.y*v.x + y.y*v.y + z.y*v.z + w.y,
-			x.z*v.x + y.z*v.y + z.z*v.z + w.z);
+		Vector3 result = new Vector3(v);
+		transformInPlace(result);
+		return result;
 	}
 	
 	public Vector3 transformVector(Vector3 v) {
-		return new Vector3(
+		Vector3 result = new Vector3(v);
+		transformVectorInPlace(result);
+		return result;
+	}
+	
+	/**
+	 * Applies the transformation to the given point
+	 */
+	public void transformInPlace(Vector3 v) {
+		transformVectorInPlace(v);
+		v.addInPlace(w);
+	}
+	
+	/**
+	 * Applies the transformation to the given vector, ignoring the translation
+	 */
+	public void transformVectorInPlace(Vector3 v) {
+		v.set(
 			x.x*v.x + y.x*v.y + z.x*v.z,
 			x.y*v.x + y.y*v.y + z.y*v.z,
 			x.z*v.x + y.z*v.y + z.z*v.z);
 	}
 	
 	public Transform transform(Transform t) {
-		return new Transform(
-			transformVector(t.x),
-			transformVector(t.y),
-			transformVector(t.z),
-			transform(t.w));
+		Transform result = new Transform();
+		result.setProduct(this, t);
+		return result;
 	}
 	
 	public Transform transformedBy(Transform t) {
-		return new Transform(
-			t.transformVector(x),
-			t.transformVector(y),
-			t.transformVector(z),
-			t.transform(w));
+		Transform result = new Transform();
+		result.setProduct(t, this);
+		return result;
+	}
+	
+	/**
+	 * Changes the transformation to {@code a.transform(b)}, the result of applying b and
+	 * then a. Either argument may be this transformation.
+	 */
+	public void setProduct(Transform a, Transform b) {
+		double xx = a.x.x*b.x.x + a.y.x*b.x.y + a.z.x*b.x.z;
+		double xy = a.x.y*b.x.x + a.y.y*b.x.y + a.z.y*b.x.z;
+		double xz = a.x.z*b.x.x + a.y.z*b.x.y + a.z.z*b.x.z;
+		double yx = a.x.x*b.y.x + a.y.x*b.y.y + a.z.x*b.y.z;
+		double yy = a.x.y*b.y.x + a.y.y*b.y.y + a.z.y*b.y.z;
+		double yz = a.x.z*b.y.x + a.y.z*b.y.y + a.z.z*b.y.z;
+		double zx = a.x.x*b.z.x + a.y.x*b.z.y + a.z.x*b.z.z;
+		double zy = a.x.y*b.z.x + a.y.y*b.z.y + a.z.y*b.z.z;
+		double zz = a.x.z*b.z.x + a.y.z*b.z.y + a.z.z*b.z.z;
+		double wx = a.x.x*b.w.x + a.y.x*b.w.y + a.z.x*b.w.z + a.w.x;
+		double wy = a.x.y*b.w.x + a.y.y*b.w.y + a.z.y*b.w.z + a.w.y;
+		double wz = a.x.z*b.w.x + a.y.z*b.w.y + a.z.z*b.w.z + a.w.z;
+		
+		x.set(xx, xy, xz);
+		y.set(yx, yy, yz);
+		z.set(zx, zy, zz);
+		w.set(wx, wy, wz);
 	}
 	
 	public String toString() {
@@ -0,0 +1,144 @@
+package net.patowen.planetarium.math;
+
+/**
+ * Propagates any orbit from its state at one time with the universal variable formulation,
+ * which treats elliptic, parabolic, and hyperbolic orbits alike through the Stumpff functions.
+ * The universal Kepler equation is solved with the Laguerre-Conway iteration, which converges
+ * from poor starting values, and each solve starts from the previous one when possible.
+ * @author Patrick Owen
+ */
+class UniversalPropagator implements OrbitPropagator {
+	private static final int MAX_ITERATIONS = 30;
+	private static final double TOLERANCE = 1e-14;
+	private static final double LAGUERRE_ORDER = 5;
+	
+	private double sqrtGaram;
+	private double startTime;
+	private double rx, ry, rz; // Position at the start time
+	private double vx, vy, vz; // Velocity at the start time
+	private double startRadius;
+	private double startRadialFactor; // r . v / sqrt(mu)
+	private double alpha; // The reciprocal of the semimajor axis
+	
+	private double previousTime = Double.NaN;
+	private double previousVariable, previousRadius;
+	
+	// The Stumpff functions C(z) and S(z) from the last call to computeStumpff
+	private double stumpffC, stumpffS;
+	
+	/**
+	 * @param garam the gravitational parameter of the two bodies together
+	 * @param state the position and then the velocity at the start time
+	 * @param offset the index of the first of the six values
+	 * @param startTime
+	 */
+	void set(double garam, double[] state, int offset, double startTime) {
+		rx = state[offset]; ry = state[offset+1]; rz = state[offset+2];
+		vx = state[offset+3]; vy = state[offset+4]; vz = state[offset+5];
+		
+		sqrtGaram = Math.sqrt(garam);
+		this.startTime = startTime;
+		startRadius = Math.sqrt(rx*rx + ry*ry + rz*rz);
+		startRadialFactor = (rx*vx + ry*vy + rz*vz) / sqrtGaram;
+		alpha = 2 / startRadius - (vx*vx + vy*vy + vz*vz) / garam;
+		previousTime = Double.NaN;
+	}
+	
+	/**
+	 * Computes the Stumpff functions, using their series near zero where the closed
+	 * forms lose precision
+	 */
+	private void computeStumpff(double z) {
+		if (z > 0.1) {
+			double s = Math.sqrt(z);
+			stumpffC = (1 - Math.cos(s)) / z;
+			stumpffS = (s - Math.sin(s)) / (z*s);
+		} else if (z < -0.1) {
+			double s = Math.sqrt(-z);
+			stumpffC = (Math.cosh(s) - 1) / -z;
+			stumpffS = (Math.sinh(s) - s) / (-z*s);
+		} else {
+			stumpffC = 1.0/2 - z*(1.0/24 - z*(1.0/720 - z*(1.0/40320 - z*(1.0/3628800 - z*(1.0/479001600)))));
+			stumpffS = 1.0/6 - z*(1.0/120 - z*(1.0/5040 - z*(1.0/362880 - z*(1.0/39916800 - z*(1.0/6227020800.0)))));
+		}
+	}
+	
+	/**
+	 * Solves the universal Kepler equation for the universal anomaly, leaving the Stumpff
+	 * functions of the solution in place
+	 */
+	private double getUniversalAnomaly(double time) {
+		double dt = time - startTime;
+		double target = sqrtGaram * dt;
+		double radialCoefficient = 1 - alpha * startRadius;
+		
+		double x;
+		if (!Double.isNaN(previousTime)) {
+			x = previousVariable + (time - previousTime) * sqrtGaram / previousRadius;
+		} else if (alpha * startRadius < -1e-6) {
+			// Vallado's starting value for hyperbolic orbits that are not nearly parabolic
+			double a = 1 / alpha;
+			double sign = Math.signum(dt);
+			x = sign * Math.sqrt(-a) * Math.log((-2 * alpha * target * sqrtGaram) /
+					(startRadialFactor * sqrtGaram + sign * Math.sqrt(-a) * radialCoefficient * sqrtGaram));
+			if (!(Math.abs(x) < Double.POSITIVE_INFINITY)) x = target / startRadius;
+		} else {
+			x = target / startRadius;
+		}
+		
+		double radius = startRadius;
+		for (int iteration=0; iteration<MAX_ITERATIONS; iteration++) {
+			double x2 = x*x;
+			double z = alpha * x2;
+			computeStumpff(z);
+			
+			double f = startRadialFactor * x2 * stumpffC + radialCoefficient * x2 * x * stumpffS + startRadius * x - target;
+			radius = startRadialFactor * x * (1 - z*stumpffS) + radialCoefficient * x2 * stumpffC + startRadius;
+			double fpp = startRadialFactor * (1 - z*stumpffC) + radialCoefficient * x * (1 - z*stumpffS);
+			
+			double n = LAGUERRE_ORDER;
+			double root = Math.sqrt(Math.abs((n-1)*(n-1)*radius*radius - n*(n-1)*f*fpp));
+			double step = n * f / (radius + Math.copySign(root, radius));
+			x -= step;
+			if (Math.abs(step) <= TOLERANCE * Math.abs(x)) break;
+		}
+		
+		computeStumpff(alpha * x * x);
+		previousTime = time;
+		previousVariable = x;
+		previousRadius = radius;
+		return x;
+	}
+	
+	public void getState(double time, double[] state, int offset) {
+		double x = getUniversalAnomaly(time);
+		double x2 = x*x;
+		double z = alpha * x2;
+		
+		double f = 1 - x2 * stumpffC / startRadius;
+		double g = (time - startTime) - x2 * x * stumpffS / sqrtGaram;
+		double px = f*rx + g*vx, py = f*ry + g*vy, pz = f*rz + g*vz;
+		double radius = Math.sqrt(px*px + py*py + pz*pz);
+		
+		double fDot = sqrtGaram / (radius * startRadius) * x * (z*stumpffS - 1);
+		double gDot = 1 - x2 * stumpffC / radius;
+		
+		state[offset] = px;
+		state[offset+1] = py;
+		state[offset+2] = pz;
+		state[offset+3] = fDot*rx + gDot*vx;
+		state[offset+4] = fDot*ry + gDot*vy;
+		state[offset+5] = fDot*rz + gDot*vz;
+	}
+	
+	public void getPosition(double time, Vector3 result) {
+		double x = getUniversalAnomaly(time);
+		double x2 = x*x;
+		
+		double f = 1 - x2 * stumpffC / startRadius;
+		double g = (time - startTime) - x2 * x * stumpffS / sqrtGaram;
+		result.x = f*rx + g*vx;
+		result.y = f*ry + g*vy;
+		result.z = f*rz + g*vz;
+	}
+}
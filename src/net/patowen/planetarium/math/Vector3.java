@@ -44,6 +44,37 @@ public class Vector3 extends VectorN {
 		x = 0; y = 0; z = 0;
 	}
 	
+	/**
+	 * Changes the vector to have the specified coordinates.
+	 * @param x the x-coordinate of the vector.
+	 * @param y the y-coordinate of the vector.
+	 * @param z the z-coordinate of the vector.
+	 */
+	public void set(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+	
+	/**
+	 * Changes the vector to the same vector as the argument.
+	 * @param v a {@code Vector3}
+	 */
+	public void set(Vector3 v) {
+		x = v.x; y = v.y; z = v.z;
+	}
+	
+	/**
+	 * Changes the vector to the point the given fraction of the way from a to b. Either
+	 * argument may be this vector.
+	 * @param a the vector at a fraction of 0
+	 * @param b the vector at a fraction of 1
+	 * @param t the fraction
+	 */
+	public void setInterpolated(Vector3 a, Vector3 b, double t) {
+		set(a.x + (b.x-a.x)*t, a.y + (b.y-a.y)*t, a.z + (b.z-a.z)*t);
+	}
+	
 	/**
 	 * Constructs a {@code Vector3} object with the specified coordinates.
 	 * @param x the x-coordinate of the vector.
@@ -103,6 +134,14 @@ public class Vector3 extends VectorN {
 		return new Vector3(x+v.x, y+v.y, z+v.z);
 	}
 	
+	/**
+	 * Adds the argument to the vector.
+	 * @param v a vector
+	 */
+	public void addInPlace(Vector3 v) {
+		x += v.x; y += v.y; z += v.z;
+	}
+	
 	/**
 	 * Returns the result of adding the vector to the argument times the given scalar.
 	 * @param v a vector
@@ -113,6 +152,15 @@ public class Vector3 extends VectorN {
 		return new Vector3(x+v.x*c, y+v.y*c, z+v.z*c);
 	}
 	
+	/**
+	 * Adds the argument times the given scalar to the vector.
+	 * @param v a vector
+	 * @param c a scalar factor
+	 */
+	public void addMultipleInPlace(Vector3 v, double c) {
+		x += v.x*c; y += v.y*c; z += v.z*c;
+	}
+	
 	/**
 	 * Returns the result of subtracting the argument from the vector.
 	 * @param v a vector
@@ -122,6 +170,14 @@ public class Vector3 extends VectorN {
 		return new Vector3(x-v.x, y-v.y, z-v.z);
 	}
 	
+	/**
+	 * Subtracts the argument from the vector.
+	 * @param v a vector
+	 */
+	public void subtractInPlace(Vector3 v) {
+		x -= v.x; y -= v.y; z -= v.z;
+	}
+	
 	/**
 	 * Returns the vector multiplied by the given scalar.
 	 * @param c a scalar factor
@@ -131,6 +187,14 @@ public class Vector3 extends VectorN {
 		return new Vector3(c*x, c*y, c*z);
 	}
 	
+	/**
+	 * Multiplies the vector by the given scalar.
+	 * @param c a scalar factor
+	 */
+	public void scaleInPlace(double c) {
+		x *= c; y *= c; z *= c;
+	}
+	
 	/**
 	 * Returns the dot product of the vector and the argument.
 	 * @param v a vector
@@ -149,6 +213,25 @@ public class Vector3 extends VectorN {
 		return new Vector3(y*v.z-z*v.y, z*v.x-x*v.z, x*v.y-y*v.x);
 	}
 	
+	/**
+	 * Changes the vector to the cross product of the arguments. Either argument may be this vector.
+	 * @param a the first vector
+	 * @param b the second vector
+	 */
+	public void setCross(Vector3 a, Vector3 b) {
+		set(a.y*b.z-a.z*b.y, a.z*b.x-a.x*b.z, a.x*b.y-a.y*b.x);
+	}
+	
+	/**
+	 * Returns the distance between the vector and the argument.
+	 * @param v a vector
+	 * @return the magnitude of the vector minus the argument
+	 */
+	public double distance(Vector3 v) {
+		double dx = x-v.x, dy = y-v.y, dz = z-v.z;
+		return Math.sqrt(dx*dx+dy*dy+dz*dz);
+	}
+	
 	/**
 	 * Rotates the vector about the given unit vector by {@code theta}.
 	 * @param v a unit vector
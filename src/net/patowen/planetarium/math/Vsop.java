@@ -1,11 +1,39 @@
 package net.patowen.planetarium.math;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Scanner;
 
-public class Vsop {
-	private static final double[] lambdaCoeffConstant = {
+public class Vsop implements Ephemeris {
+	/**
+	 * Identifies the binary form of the series written by {@link VsopConverter}. The file
+	 * starts with this magic number, then the format version, the size and modification time
+	 * in milliseconds of the text file it was converted from as longs, and the number of
+	 * blocks. Each block holds one power of t for one variable: the variable index and
+	 * exponent as bytes, the number of terms as an int, and then each term as 17 multipliers
+	 * as shorts followed by s and c as doubles. The terms of each block are sorted by how many
+	 * multipliers are non-zero, and then from largest to smallest {@code s*s + c*c}, so that
+	 * they can be read straight into a {@code FlatPlanetarySolution}. Everything is big-endian.
+	 */
+	public static final int BINARY_MAGIC = 0x56534F50; // "VSOP"
+	public static final int BINARY_VERSION = 3;
+	
+	// Where the size and modification time of the text file start in the binary file
+	private static final int BINARY_SOURCE_OFFSET = 8;
+	
+	static final double[] lambdaCoeffConstant = {
 		0.4402608631669000e1,
 		0.3176134461576000e1,
 		0.1753470369433000e1,
@@ -25,7 +53,7 @@ public class Vsop {
 		2.35555563875e0
 	};
 	
-	private static final double[] lambdaCoeffLinear = {
+	static final double[] lambdaCoeffLinear = {
 		0.2608790314068555e5,
 		0.1021328554743445e5,
 		0.6283075850353215e4,
@@ -45,7 +73,10 @@ public class Vsop {
 		83286.9142477147e0
 	};
 	
-	private PlanetarySolution solution;
+	private int planet;
+	private PlanetarySolution solution; // Only loaded when requested if the binary file is used
+	private FlatPlanetarySolution flatSolution;
+	VsopCatalog catalog; // Shares the arguments with the other planets if set
 	
 	public static class PlanetarySolution {
 		private PlanetarySeries[] variables;
@@ -57,19 +88,15 @@ public class Vsop {
 			}
 			
 			while (scan.hasNextLine()) {
-				String line = scan.nextLine();
-				int k = 12;
-				int varIndex = Integer.parseInt(line.substring(k, k+3).trim()) - 1;
-				k += 3;
-				int exponent = Integer.parseInt(line.substring(k, k+3).trim());
-				k += 3;
-				int numTerms = Integer.parseInt(line.substring(k, k+7).trim());
-				k += 7;
-				
-				variables[varIndex].addCoefficient(scan, exponent, numTerms, precision);
+				int[] header = parseHeader(scan.nextLine());
+				variables[header[0]].addCoefficient(scan, header[1], header[2], precision);
 			}
 		}
 		
+		PlanetarySeries getVariable(int index) {
+			return variables[index];
+		}
+		
 		public double[] calculate(double t) {
 			double[] lambda1 = new double[17];
 			for (int i=0; i<17; i++) {
@@ -96,6 +123,10 @@ public class Vsop {
 			coefficients.add(new Series(scan, exponent, numTerms, precision));
 		}
 		
+		ArrayList<Series> getCoefficients() {
+			return coefficients;
+		}
+		
 		public double calculate(double t, double[] lambda1) {
 			double result = 0;
 			for (Series coefficient : coefficients) {
@@ -120,6 +151,14 @@ public class Vsop {
 			}
 		}
 		
+		int getExponent() {
+			return exponent;
+		}
+		
+		ArrayList<Term> getTerms() {
+			return terms;
+		}
+		
 		public double calculate(double t, double[] lambda1) {
 			double result = 0;
 			for (Term term : terms) {
@@ -174,6 +213,34 @@ public class Vsop {
 			k += 3;
 		}
 		
+		/**
+		 * Writes the term in the binary format described by {@link Vsop#BINARY_MAGIC}
+		 * @param out the stream to write to
+		 * @throws IOException
+		 */
+		public void write(DataOutputStream out) throws IOException {
+			for (int i=0; i<17; i++) {
+				if (a[i] < Short.MIN_VALUE || a[i] > Short.MAX_VALUE) {
+					throw new IllegalStateException("Multiplier " + a[i] + " does not fit in a short");
+				}
+				out.writeShort(a[i]);
+			}
+			out.writeDouble(s);
+			out.writeDouble(c);
+		}
+		
+		int getMultiplier(int index) {
+			return a[index];
+		}
+		
+		double getS() {
+			return s;
+		}
+		
+		double getC() {
+			return c;
+		}
+		
 		public double getPhi(double[] lambda1) {
 			double result = 0;
 			for (int i=0; i<17; i++) {
@@ -190,18 +257,239 @@ public class Vsop {
 		public boolean isSignificant(double precision) {
 			return s*s + c*c > precision;
 		}
+		
+		double getAmplitude() {
+			return s*s + c*c;
+		}
+		
+		/**
+		 * @return the number of non-zero multipliers
+		 */
+		int getArgCount() {
+			int count = 0;
+			for (int i=0; i<17; i++) {
+				if (a[i] != 0) count++;
+			}
+			return count;
+		}
 	}
 	
+	/**
+	 * Parses the header line that precedes each block of terms in the text format
+	 * @param line the header line
+	 * @return the variable index (starting at 0), the exponent of t, and the number of terms
+	 */
+	static int[] parseHeader(String line) {
+		int k = 12;
+		int varIndex = Integer.parseInt(line.substring(k, k+3).trim()) - 1;
+		k += 3;
+		int exponent = Integer.parseInt(line.substring(k, k+3).trim());
+		k += 3;
+		int numTerms = Integer.parseInt(line.substring(k, k+7).trim());
+		return new int[] {varIndex, exponent, numTerms};
+	}
+	
+	/**
+	 * Loads the solution for the Earth-Moon barycenter
+	 */
 	public Vsop() {
+		this(VsopCatalog.EARTH_MOON_BARYCENTER);
+	}
+	
+	/**
+	 * Loads the solution for one planet
+	 * @param planet the VSOP2013 planet number, from 1 (Mercury) to 9 (Pluto)
+	 */
+	public Vsop(int planet) {
+		this.planet = planet;
+		
+		ByteBuffer binary = loadBinary(getResourcePath(planet) + ".bin");
+		if (binary != null && isCurrent(binary, getResourcePath(planet) + ".dat")) {
+			try {
+				flatSolution = new FlatPlanetarySolution(binary, 1e-16);
+				return;
+			} catch (VsopFormatException e) {
+				// Corrupt binary file. The text file is still authoritative.
+			}
+		}
+		
+		solution = loadText(planet);
+		flatSolution = new FlatPlanetarySolution(solution);
+	}
+	
+	/**
+	 * Shares the series of another planet's solution
+	 */
+	private Vsop(Vsop vsop, FlatPlanetarySolution flatSolution) {
+		planet = vsop.planet;
+		solution = vsop.solution;
+		this.flatSolution = flatSolution;
+		catalog = vsop.catalog;
+	}
+	
+	private static PlanetarySolution loadText(int planet) {
 		ClassLoader cl = Vsop.class.getClassLoader();
-		InputStream stream = cl.getResourceAsStream("net/patowen/planetarium/data/vsop/VSOP2013p" + 3 + ".dat");
-		Scanner scan = new Scanner(stream);
+		InputStream stream = cl.getResourceAsStream(getResourcePath(planet) + ".dat");
+		if (stream == null) {
+			throw new IllegalArgumentException("No VSOP2013 data for planet " + planet);
+		}
+		
+		try (Scanner scan = new Scanner(stream)) {
+			return new PlanetarySolution(scan, 1e-16);
+		}
+	}
+	
+	/**
+	 * @param planet the VSOP2013 planet number
+	 * @return the resource name of the planet's data files without the extension
+	 */
+	static String getResourcePath(int planet) {
+		return "net/patowen/planetarium/data/vsop/VSOP2013p" + planet;
+	}
+	
+	/**
+	 * Returns the series as {@code Term} objects, which are slow to evaluate but serve as a
+	 * reference. If the planet was loaded from its binary file, this reads the text file.
+	 * @return the series
+	 */
+	public synchronized PlanetarySolution getSolution() {
+		if (solution == null) {
+			solution = loadText(planet);
+		}
+		return solution;
+	}
+	
+	FlatPlanetarySolution getFlatSolution() {
+		return flatSolution;
+	}
+	
+	/**
+	 * Returns the contents of the given binary resource, memory-mapped if the resource
+	 * is a plain file, or null if the resource is missing or cannot be read
+	 * @param resource the name of the resource
+	 * @return a buffer positioned at the start of the resource, or null
+	 */
+	private static ByteBuffer loadBinary(String resource) {
+		URL url = Vsop.class.getClassLoader().getResource(resource);
+		if (url == null) return null;
 		
-		solution = new PlanetarySolution(scan, 1e-16);
+		try {
+			if (url.getProtocol().equals("file")) {
+				try (FileChannel channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+					return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				}
+			}
+			
+			try (InputStream stream = url.openStream()) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] chunk = new byte[65536];
+				int numRead;
+				while ((numRead = stream.read(chunk)) != -1) {
+					bytes.write(chunk, 0, numRead);
+				}
+				return ByteBuffer.wrap(bytes.toByteArray());
+			}
+		} catch (IOException | URISyntaxException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Checks that a binary file was converted from the text file as it is now, by comparing
+	 * the size and modification time recorded in its header
+	 * @param binary the contents of the binary file
+	 * @param textResource the name of the text file's resource
+	 * @return whether the binary file can be used, which it can if there is no text file
+	 */
+	private static boolean isCurrent(ByteBuffer binary, String textResource) {
+		URL url = Vsop.class.getClassLoader().getResource(textResource);
+		if (url == null) return true;
+		
+		long size, modified;
+		try {
+			if (url.getProtocol().equals("file")) {
+				Path path = Paths.get(url.toURI());
+				size = Files.size(path);
+				modified = Files.getLastModifiedTime(path).toMillis();
+			} else {
+				URLConnection connection = url.openConnection();
+				size = connection.getContentLengthLong();
+				modified = connection.getLastModified();
+			}
+		} catch (IOException | URISyntaxException e) {
+			return false;
+		}
+		
+		return binary.limit() >= BINARY_SOURCE_OFFSET + 16
+				&& binary.getLong(BINARY_SOURCE_OFFSET) == size
+				&& binary.getLong(BINARY_SOURCE_OFFSET + 8) == modified;
+	}
+	
+	/**
+	 * Computes the six VSOP variables at the given time
+	 * @param t the time in seconds since J2000
+	 * @param params a 6-element array to store the variables in
+	 */
+	public void calculate(double t, double[] params) {
+		if (catalog != null) {
+			catalog.calculate(flatSolution, t, params);
+		} else {
+			// The solution reuses internal storage, and ephemerides fit segments on several threads
+			synchronized (flatSolution) {
+				flatSolution.calculate(t / 365250.0 / 86400.0, params);
+			}
+		}
+	}
+	
+	/**
+	 * Chooses how the phase of each term is turned into a sine and cosine. The default,
+	 * {@code DIRECT}, matches {@code PlanetarySolution.calculate} to rounding error. The
+	 * faster modes trade some of that accuracy away.
+	 * @param phaseMode the phase mode to use from now on
+	 */
+	public void setPhaseMode(FlatPlanetarySolution.PhaseMode phaseMode) {
+		flatSolution.setPhaseMode(phaseMode);
+	}
+	
+	/**
+	 * Returns the series truncated to the terms with {@code s*s + c*c} greater than the given
+	 * precision, sharing the terms with this one rather than reloading them. Both can be
+	 * evaluated on any thread without affecting each other.
+	 * @param precision the smallest squared amplitude to include, at least 1e-16
+	 * @return the truncated series, in the same catalog and with the same phase mode
+	 */
+	public Vsop truncate(double precision) {
+		return new Vsop(this, flatSolution.truncate(precision));
+	}
+	
+	/**
+	 * Computes the six VSOP variables at many times, which is much faster than calling
+	 * {@code calculate} for each time
+	 * @param times the times in seconds since J2000
+	 * @param out an array of 6 times as many elements as times to store the variables in,
+	 * with the six variables for each time stored together
+	 */
+	public void evaluate(double[] times, double[] out) {
+		double[] t = new double[times.length];
+		for (int i=0; i<times.length; i++) {
+			t[i] = times[i] / 365250.0 / 86400.0;
+		}
+		flatSolution.calculate(t, out);
 	}
 	
 	public void perturbOrbit(Orbit orbit, double t) {
-		double[] params = solution.calculate(t / 365250.0 / 86400.0);
+		double[] params = new double[6];
+		calculate(t, params);
+		setOrbitFromParameters(orbit, params, t);
+	}
+	
+	/**
+	 * Sets the elements of an orbit from the six VSOP variables
+	 * @param orbit the orbit to modify
+	 * @param params the VSOP variables at time t
+	 * @param t the time in seconds since J2000
+	 */
+	public static void setOrbitFromParameters(Orbit orbit, double[] params, double t) {
 		orbit.setSemimajorAxis(params[0] * 0.149597870691e9);
 		double ascendLong = Math.atan2(params[5], params[4]);
 		orbit.setAscendingNodeLongitude(ascendLong);
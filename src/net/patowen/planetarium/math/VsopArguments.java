@@ -0,0 +1,57 @@
+package net.patowen.planetarium.math;
+
+/**
+ * Holds the 17 VSOP2013 arguments at a given time, along with tables of the sine and
+ * cosine of their integer multiples. The tables are built with angle-addition recurrences,
+ * so filling them needs only one call to {@code Math.sin} and {@code Math.cos} per argument.
+ * It also holds the scratch block used when terms are evaluated with {@code SeriesKernel}.
+ * @author Patrick Owen
+ */
+public class VsopArguments {
+	final double[] lambda1;
+	
+	// Table entries for argument i are at tableOffset[i] + multiplier
+	final int[] tableOffset;
+	final double[] cosTable, sinTable;
+	
+	final SeriesKernel kernel;
+	
+	/**
+	 * Creates storage for arguments whose multiples are needed up to the given values
+	 * @param maxMultiplier the largest absolute multiplier of each of the 17 arguments
+	 */
+	public VsopArguments(int[] maxMultiplier) {
+		lambda1 = new double[17];
+		tableOffset = new int[18];
+		for (int i=0; i<17; i++) {
+			tableOffset[i+1] = tableOffset[i] + maxMultiplier[i] + 1;
+		}
+		cosTable = new double[tableOffset[17]];
+		sinTable = new double[tableOffset[17]];
+		kernel = new SeriesKernel();
+	}
+	
+	/**
+	 * Computes the arguments at the given time
+	 * @param t the time in thousands of Julian years since J2000
+	 * @param computeTables whether to also fill the sine and cosine tables
+	 */
+	public void setTime(double t, boolean computeTables) {
+		for (int i=0; i<17; i++) {
+			lambda1[i] = Vsop.lambdaCoeffConstant[i] + Vsop.lambdaCoeffLinear[i] * t;
+		}
+		
+		if (!computeTables) return;
+		
+		for (int i=0; i<17; i++) {
+			int start = tableOffset[i], end = tableOffset[i+1];
+			double cos1 = Math.cos(lambda1[i]), sin1 = Math.sin(lambda1[i]);
+			cosTable[start] = 1;
+			sinTable[start] = 0;
+			for (int k=start+1; k<end; k++) {
+				cosTable[k] = cosTable[k-1] * cos1 - sinTable[k-1] * sin1;
+				sinTable[k] = sinTable[k-1] * cos1 + cosTable[k-1] * sin1;
+			}
+		}
+	}
+}
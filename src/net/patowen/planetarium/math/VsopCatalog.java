@@ -0,0 +1,157 @@
+package net.patowen.planetarium.math;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Holds the VSOP2013 solutions of any set of planets. Planets are loaded when first
+ * requested, and several planets can be loaded in parallel with {@code load}. Each thread
+ * keeps one set of arguments shared by every planet in the catalog, so when a thread evaluates
+ * several planets at the same time, the arguments and their sine and cosine tables are only
+ * computed once, and threads fitting different planets never wait on each other.
+ * @author Patrick Owen
+ */
+public class VsopCatalog {
+	public static final int MERCURY = 1;
+	public static final int VENUS = 2;
+	public static final int EARTH_MOON_BARYCENTER = 3;
+	public static final int MARS = 4;
+	public static final int JUPITER = 5;
+	public static final int SATURN = 6;
+	public static final int URANUS = 7;
+	public static final int NEPTUNE = 8;
+	public static final int PLUTO = 9;
+	
+	private Vsop[] planets;
+	
+	// Replaced rather than modified when a planet needs larger tables, so each thread can
+	// tell whether its arguments are still large enough
+	private volatile int[] maxMultiplier;
+	private ThreadLocal<SharedArguments> arguments;
+	
+	/**
+	 * One thread's arguments, with the time they were last computed for
+	 */
+	private static class SharedArguments {
+		final int[] maxMultiplier;
+		final VsopArguments arguments;
+		double time = Double.NaN;
+		boolean hasTables; // Whether the tables were also computed for that time
+		
+		SharedArguments(int[] maxMultiplier) {
+			this.maxMultiplier = maxMultiplier;
+			arguments = new VsopArguments(maxMultiplier);
+		}
+	}
+	
+	public VsopCatalog() {
+		planets = new Vsop[10];
+		maxMultiplier = new int[17];
+		arguments = new ThreadLocal<>();
+	}
+	
+	/**
+	 * @param planet the VSOP2013 planet number
+	 * @return whether the data file for the planet can be found
+	 */
+	public static boolean isAvailable(int planet) {
+		ClassLoader cl = VsopCatalog.class.getClassLoader();
+		String path = Vsop.getResourcePath(planet);
+		return cl.getResource(path + ".bin") != null || cl.getResource(path + ".dat") != null;
+	}
+	
+	/**
+	 * Loads the given planets that are not loaded yet, reading each file on its own thread
+	 * @param planetNumbers the VSOP2013 planet numbers
+	 */
+	public void load(int... planetNumbers) {
+		int[] missing;
+		synchronized (this) {
+			missing = IntStream.of(planetNumbers).distinct().filter(planet -> planets[planet] == null).toArray();
+		}
+		
+		Vsop[] loaded = IntStream.of(missing).parallel().mapToObj(Vsop::new).toArray(Vsop[]::new);
+		
+		synchronized (this) {
+			for (int i=0; i<missing.length; i++) {
+				if (planets[missing[i]] == null) {
+					add(missing[i], loaded[i]);
+				}
+			}
+		}
+	}
+	
+	private void add(int planet, Vsop vsop) {
+		int[] planetMax = vsop.getFlatSolution().getMaxMultiplier();
+		int[] newMax = Arrays.copyOf(maxMultiplier, 17);
+		boolean grown = false;
+		for (int i=0; i<17; i++) {
+			if (planetMax[i] > newMax[i]) {
+				newMax[i] = planetMax[i];
+				grown = true;
+			}
+		}
+		
+		// The shared tables must cover the multipliers of every planet. Each thread
+		// replaces its arguments when it next sees the new maximums.
+		if (grown) {
+			maxMultiplier = newMax;
+		}
+		
+		vsop.catalog = this;
+		planets[planet] = vsop;
+	}
+	
+	/**
+	 * Returns the given planet, loading it if needed. Its calculations share arguments
+	 * with the rest of the catalog.
+	 * @param planet the VSOP2013 planet number
+	 * @return the planet's series
+	 */
+	public synchronized Vsop getPlanet(int planet) {
+		if (planets[planet] == null) {
+			add(planet, new Vsop(planet));
+		}
+		return planets[planet];
+	}
+	
+	public Vsop.PlanetarySolution getSolution(int planet) {
+		return getPlanet(planet).getSolution();
+	}
+	
+	/**
+	 * Computes the calling thread's shared arguments for the given time, so that each planet
+	 * the thread evaluates at that time can reuse them
+	 * @param t the time in seconds since J2000
+	 * @param computeTables whether the sine and cosine tables are needed
+	 * @return the arguments at time t
+	 */
+	private VsopArguments setTime(double t, boolean computeTables) {
+		SharedArguments shared = arguments.get();
+		int[] currentMax = maxMultiplier;
+		if (shared == null || shared.maxMultiplier != currentMax) {
+			shared = new SharedArguments(currentMax);
+			arguments.set(shared);
+		}
+		
+		if (t != shared.time || (computeTables && !shared.hasTables)) {
+			shared.arguments.setTime(t / 365250.0 / 86400.0, computeTables);
+			shared.time = t;
+			shared.hasTables = computeTables;
+		}
+		return shared.arguments;
+	}
+	
+	/**
+	 * Computes the six VSOP variables of one planet, recomputing the calling thread's
+	 * shared arguments only if the time has changed. This can be called from several
+	 * threads at once.
+	 * @param solution the planet's series
+	 * @param t the time in seconds since J2000
+	 * @param params a 6-element array to store the variables in
+	 */
+	void calculate(FlatPlanetarySolution solution, double t, double[] params) {
+		boolean computeTables = solution.getPhaseMode() == FlatPlanetarySolution.PhaseMode.RECURRENCE;
+		solution.calculate(setTime(t, computeTables), t / 365250.0 / 86400.0, params);
+	}
+}
@@ -0,0 +1,92 @@
+package net.patowen.planetarium.math;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * Offline tool that converts a VSOP2013 text file into the binary format read by
+ * {@link Vsop}. All terms are kept, so truncation can still be chosen at load time.
+ * @author Patrick Owen
+ */
+public class VsopConverter {
+	// The order the binary format requires within each block
+	private static final Comparator<Vsop.Term> TERM_ORDER = Comparator
+			.comparingInt(Vsop.Term::getArgCount)
+			.thenComparing(Comparator.comparingDouble(Vsop.Term::getAmplitude).reversed());
+	
+	/**
+	 * Converts a single file
+	 * @param args the text file to read and the binary file to write
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: VsopConverter <VSOP2013pN.dat> <VSOP2013pN.bin>");
+			System.exit(1);
+		}
+		
+		ArrayList<int[]> headers = new ArrayList<>();
+		ArrayList<Vsop.Term[]> blocks = new ArrayList<>();
+		
+		int lineNumber = 0;
+		try (Scanner scan = new Scanner(new FileInputStream(args[0]))) {
+			while (scan.hasNextLine()) {
+				lineNumber++;
+				int[] header = Vsop.parseHeader(scan.nextLine());
+				if (header[0] < 0 || header[0] >= 6 || header[1] < 0 || header[1] > Byte.MAX_VALUE) {
+					throw new IllegalArgumentException("Invalid variable or exponent");
+				}
+				
+				Vsop.Term[] terms = new Vsop.Term[header[2]];
+				for (int i=0; i<terms.length; i++) {
+					lineNumber++;
+					terms[i] = new Vsop.Term(scan.nextLine());
+					for (int j=0; j<17; j++) {
+						int multiplier = terms[i].getMultiplier(j);
+						if (multiplier < Short.MIN_VALUE || multiplier > Short.MAX_VALUE) {
+							throw new IllegalArgumentException("Multiplier " + multiplier + " of argument " + (j+1) + " does not fit in a short");
+						}
+					}
+				}
+				Arrays.sort(terms, TERM_ORDER);
+				
+				headers.add(header);
+				blocks.add(terms);
+			}
+		} catch (IllegalArgumentException | IndexOutOfBoundsException | NoSuchElementException e) {
+			// Number format errors are included as IllegalArgumentExceptions
+			throw new IOException(args[0] + ":" + lineNumber + ": " + e.getMessage(), e);
+		}
+		
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[1])))) {
+			out.writeInt(Vsop.BINARY_MAGIC);
+			out.writeInt(Vsop.BINARY_VERSION);
+			
+			// Lets Vsop notice when the text file has changed since it was converted
+			File source = new File(args[0]);
+			out.writeLong(source.length());
+			out.writeLong(source.lastModified());
+			
+			out.writeInt(blocks.size());
+			
+			for (int i=0; i<blocks.size(); i++) {
+				int[] header = headers.get(i);
+				out.writeByte(header[0]);
+				out.writeByte(header[1]);
+				out.writeInt(header[2]);
+				for (Vsop.Term term : blocks.get(i)) {
+					term.write(out);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package net.patowen.planetarium.math;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a binary VSOP file written by {@link VsopConverter} is truncated, corrupt, or
+ * of a different version
+ * @author Patrick Owen
+ */
+public class VsopFormatException extends IOException {
+	public VsopFormatException(String message) {
+		super(message);
+	}
+	
+	public VsopFormatException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
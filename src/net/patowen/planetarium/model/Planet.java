@@ -2,6 +2,7 @@ package net.patowen.planetarium.model;
 
 import net.patowen.planetarium.math.Vector3;
 import net.patowen.planetarium.rendering.ETexture;
+import net.patowen.planetarium.rendering.MeshBuilder;
 import net.patowen.planetarium.rendering.Model;
 import net.patowen.planetarium.rendering.SceneNodeType;
 
@@ -14,7 +15,7 @@ public class Planet extends SceneNodeType {
 	public Planet(ETexture texture, double equatorialRadius, double polarRadius, boolean shining) {
 		eqRadius = equatorialRadius;
 		poleRadius = polarRadius;
-		Model model = new Model();
+		MeshBuilder mesh = new MeshBuilder(2);
 		int slices = numSteps*2, stacks = numSteps;
 		VertexGrid grid = new VertexGrid(slices, stacks); //slices, stacks
 		
@@ -37,8 +38,8 @@ public class Planet extends SceneNodeType {
 			}
 		}
 		grid.setTexCoords(0, 1, 1, 0, textureStepsPerWrap*2, textureStepsPerWrap, 0, 0);
-		grid.addToModel(model);
-		setModel(model);
+		grid.addToMesh(mesh);
+		setModel(new Model(mesh));
 		setTexture(texture);
 		
 		if (shining) {
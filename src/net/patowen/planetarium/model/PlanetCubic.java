@@ -1,22 +1,50 @@
 package net.patowen.planetarium.model;
 
-import net.patowen.planetarium.math.Vector3;
 import net.patowen.planetarium.rendering.EShaderProgram;
 import net.patowen.planetarium.rendering.ETexture;
+import net.patowen.planetarium.rendering.MeshBuilder;
 import net.patowen.planetarium.rendering.Model;
 import net.patowen.planetarium.rendering.SceneNodeType;
-import net.patowen.planetarium.rendering.Vertex;
 
 public class PlanetCubic extends SceneNodeType {
-	private int numSteps = 64;
+	// Subdivisions of each cube face for each level of detail, coarsest first
+	private static final int[] LEVEL_STEPS = {4, 8, 16, 32, 64, 128};
+	
+	// How far, in pixels, the flat triangles may fall inside the true silhouette
+	private static final double MAX_PIXEL_ERROR = 0.5;
+	
 	private double eqRadius = 1;
 	private double poleRadius = 0.5;
 	
 	public PlanetCubic(ETexture texture, double equatorialRadius, double polarRadius, boolean shining) {
 		eqRadius = equatorialRadius;
 		poleRadius = polarRadius;
-		Model model = new Model();
-		model.setTextureDimension(3);
+		
+		// The widest cells, at the center of each face, span about 2/steps radians, so their
+		// edges sag below the surface by about radius/(2*steps^2)
+		Model[] levels = new Model[LEVEL_STEPS.length];
+		double[] maxScreenRadii = new double[LEVEL_STEPS.length];
+		for (int i=0; i<LEVEL_STEPS.length; i++) {
+			levels[i] = createModel(LEVEL_STEPS[i]);
+			maxScreenRadii[i] = MAX_PIXEL_ERROR * 2 * LEVEL_STEPS[i] * LEVEL_STEPS[i];
+		}
+		
+		setShaderProgram(EShaderProgram.CUBIC);
+		setLevelsOfDetail(levels, maxScreenRadii, Math.max(eqRadius, poleRadius));
+		setTexture(texture);
+		
+		if (shining) {
+			setColor(new float[] {0, 0, 0});
+			setEmission(new float[] {1, 1, 1});
+		}
+	}
+	
+	/**
+	 * Builds the mesh of a cube projected onto the ellipsoid
+	 * @param numSteps the number of subdivisions along each edge of each face
+	 */
+	private Model createModel(int numSteps) {
+		MeshBuilder mesh = new MeshBuilder(3);
 		
 		int[][] posX = new int[numSteps + 1][numSteps + 1];
 		int[][] posY = new int[numSteps + 1][numSteps + 1];
@@ -31,16 +59,16 @@ public class PlanetCubic extends SceneNodeType {
 				double u = (double)i / numSteps * 2 - 1;
 				double v = (double)j / numSteps * 2 - 1;
 				
-				posX[i][j] = addVertex(model, new Vector3(1, u, v));
-				negX[i][j] = addVertex(model, new Vector3(-1, u, v));
+				posX[i][j] = addVertex(mesh, 1, u, v);
+				negX[i][j] = addVertex(mesh, -1, u, v);
 				
 				if (i != 0 && i != numSteps) {
-					posY[i][j] = addVertex(model, new Vector3(u, 1, v));
-					negY[i][j] = addVertex(model, new Vector3(u, -1, v));
+					posY[i][j] = addVertex(mesh, u, 1, v);
+					negY[i][j] = addVertex(mesh, u, -1, v);
 					
 					if (j != 0 && j != numSteps) {
-						posZ[i][j] = addVertex(model, new Vector3(u, v, 1));
-						negZ[i][j] = addVertex(model, new Vector3(u, v, -1));
+						posZ[i][j] = addVertex(mesh, u, v, 1);
+						negZ[i][j] = addVertex(mesh, u, v, -1);
 					}
 				}
 			}
@@ -71,33 +99,30 @@ public class PlanetCubic extends SceneNodeType {
 		
 		for (int i=0; i<numSteps; i++) {
 			for (int j=0; j<numSteps; j++) {
-				model.addQuad(posX[i][j], posX[i+1][j], posX[i+1][j+1], posX[i][j+1]);
-				model.addQuad(negX[i][j], negX[i][j+1], negX[i+1][j+1], negX[i+1][j]);
+				mesh.addQuad(posX[i][j], posX[i+1][j], posX[i+1][j+1], posX[i][j+1]);
+				mesh.addQuad(negX[i][j], negX[i][j+1], negX[i+1][j+1], negX[i+1][j]);
 				
-				model.addQuad(posY[i][j], posY[i][j+1], posY[i+1][j+1], posY[i+1][j]);
-				model.addQuad(negY[i][j], negY[i+1][j], negY[i+1][j+1], negY[i][j+1]);
+				mesh.addQuad(posY[i][j], posY[i][j+1], posY[i+1][j+1], posY[i+1][j]);
+				mesh.addQuad(negY[i][j], negY[i+1][j], negY[i+1][j+1], negY[i][j+1]);
 				
-				model.addQuad(posZ[i][j], posZ[i+1][j], posZ[i+1][j+1], posZ[i][j+1]);
-				model.addQuad(negZ[i][j], negZ[i][j+1], negZ[i+1][j+1], negZ[i+1][j]);
+				mesh.addQuad(posZ[i][j], posZ[i+1][j], posZ[i+1][j+1], posZ[i][j+1]);
+				mesh.addQuad(negZ[i][j], negZ[i][j+1], negZ[i+1][j+1], negZ[i+1][j]);
 			}
 		}
 		
-		setShaderProgram(EShaderProgram.CUBIC);
-		setModel(model);
-		setTexture(texture);
-		
-		if (shining) {
-			setColor(new float[] {0, 0, 0});
-			setEmission(new float[] {1, 1, 1});
-		}
+		return new Model(mesh);
 	}
 	
-	private int addVertex(Model model, Vector3 sphereCoords) {
-		sphereCoords.normalize();
-		Vector3 pos = new Vector3(sphereCoords.x * eqRadius, sphereCoords.y * eqRadius, sphereCoords.z * poleRadius);
-		Vector3 normal = new Vector3(sphereCoords.x / eqRadius, sphereCoords.y / eqRadius, sphereCoords.z / poleRadius);
-		Vector3 texCoord = new Vector3(sphereCoords);
-		normal.normalize();
-		return model.addVertex(new Vertex(pos, normal, texCoord));
+	private int addVertex(MeshBuilder mesh, double x, double y, double z) {
+		double length = Math.sqrt(x*x + y*y + z*z);
+		x /= length; y /= length; z /= length;
+		
+		double nx = x / eqRadius, ny = y / eqRadius, nz = z / poleRadius;
+		double normalLength = Math.sqrt(nx*nx + ny*ny + nz*nz);
+		
+		return mesh.addVertex(
+				x * eqRadius, y * eqRadius, z * poleRadius,
+				nx / normalLength, ny / normalLength, nz / normalLength,
+				x, y, z);
 	}
 }
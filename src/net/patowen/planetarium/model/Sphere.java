@@ -1,6 +1,7 @@
 package net.patowen.planetarium.model;
 
 import net.patowen.planetarium.math.Vector3;
+import net.patowen.planetarium.rendering.MeshBuilder;
 import net.patowen.planetarium.rendering.Model;
 import net.patowen.planetarium.rendering.SceneNodeType;
 
@@ -20,7 +21,7 @@ public class Sphere extends SceneNodeType {
 	 * @param c
 	 */
 	public Sphere() {
-		Model model = new Model();
+		MeshBuilder mesh = new MeshBuilder(2);
 		int slices = numSteps*2, stacks = numSteps;
 		VertexGrid grid = new VertexGrid(slices, stacks); //slices, stacks
 		
@@ -38,7 +39,7 @@ public class Sphere extends SceneNodeType {
 			}
 		}
 		grid.setTexCoords(0, 0, 1, 1, textureStepsPerWrap*2, textureStepsPerWrap, 0, 0);
-		grid.addToModel(model);
-		setModel(model);
+		grid.addToMesh(mesh);
+		setModel(new Model(mesh));
 	}
 }
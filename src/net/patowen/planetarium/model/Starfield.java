@@ -2,6 +2,7 @@ package net.patowen.planetarium.model;
 
 import net.patowen.planetarium.math.Vector3;
 import net.patowen.planetarium.rendering.ETexture;
+import net.patowen.planetarium.rendering.MeshBuilder;
 import net.patowen.planetarium.rendering.Model;
 import net.patowen.planetarium.rendering.SceneNodeType;
 
@@ -9,9 +10,9 @@ public class Starfield extends SceneNodeType {
 	private int textureStepsPerWrap = 256;
 	private int numSteps = 256;
 	private double radius = 1000;
-
+	
 	public Starfield() {
-		Model model = new Model();
+		MeshBuilder mesh = new MeshBuilder(2);
 		int slices = numSteps*2, stacks = numSteps;
 		VertexGrid grid = new VertexGrid(slices, stacks); //slices, stacks
 		
@@ -29,8 +30,8 @@ public class Starfield extends SceneNodeType {
 			}
 		}
 		grid.setTexCoords(1, 0, 0, 1, textureStepsPerWrap*2, textureStepsPerWrap, 0, 0);
-		grid.addToModel(model);
-		setModel(model);
+		grid.addToMesh(mesh);
+		setModel(new Model(mesh));
 		setTexture(ETexture.STARFIELD);
 		
 		setColor(new float[] {0, 0, 0});
@@ -1,19 +1,19 @@
 package net.patowen.planetarium.model;
 
-import net.patowen.planetarium.math.Vector3;
 import net.patowen.planetarium.rendering.EShaderProgram;
 import net.patowen.planetarium.rendering.ETexture;
+import net.patowen.planetarium.rendering.MeshBuilder;
 import net.patowen.planetarium.rendering.Model;
 import net.patowen.planetarium.rendering.SceneNodeType;
-import net.patowen.planetarium.rendering.Vertex;
 
 public class StarfieldCubic extends SceneNodeType {
-	private int numSteps = 64;
+	// The starfield is always seen from its center, where every direction still finds the right
+	// part of the cube map however coarse the mesh is, so it needs no finer levels of detail
+	private int numSteps = 4;
 	private double radius = 1000;
 	
 	public StarfieldCubic() {
-		Model model = new Model();
-		model.setTextureDimension(3);
+		MeshBuilder mesh = new MeshBuilder(3);
 		
 		int[][] posX = new int[numSteps + 1][numSteps + 1];
 		int[][] posY = new int[numSteps + 1][numSteps + 1];
@@ -28,16 +28,16 @@ public class StarfieldCubic extends SceneNodeType {
 				double u = (double)i / numSteps * 2 - 1;
 				double v = (double)j / numSteps * 2 - 1;
 				
-				posX[i][j] = addVertex(model, new Vector3(1, u, v));
-				negX[i][j] = addVertex(model, new Vector3(-1, u, v));
+				posX[i][j] = addVertex(mesh, 1, u, v);
+				negX[i][j] = addVertex(mesh, -1, u, v);
 				
 				if (i != 0 && i != numSteps) {
-					posY[i][j] = addVertex(model, new Vector3(u, 1, v));
-					negY[i][j] = addVertex(model, new Vector3(u, -1, v));
+					posY[i][j] = addVertex(mesh, u, 1, v);
+					negY[i][j] = addVertex(mesh, u, -1, v);
 					
 					if (j != 0 && j != numSteps) {
-						posZ[i][j] = addVertex(model, new Vector3(u, v, 1));
-						negZ[i][j] = addVertex(model, new Vector3(u, v, -1));
+						posZ[i][j] = addVertex(mesh, u, v, 1);
+						negZ[i][j] = addVertex(mesh, u, v, -1);
 					}
 				}
 			}
@@ -68,31 +68,29 @@ public class StarfieldCubic extends SceneNodeType {
 		
 		for (int i=0; i<numSteps; i++) {
 			for (int j=0; j<numSteps; j++) {
-				model.addQuad(posX[i][j], posX[i][j+1], posX[i+1][j+1], posX[i+1][j]);
-				model.addQuad(negX[i][j], negX[i+1][j], negX[i+1][j+1], negX[i][j+1]);
+				mesh.addQuad(posX[i][j], posX[i][j+1], posX[i+1][j+1], posX[i+1][j]);
+				mesh.addQuad(negX[i][j], negX[i+1][j], negX[i+1][j+1], negX[i][j+1]);
 				
-				model.addQuad(posY[i][j], posY[i+1][j], posY[i+1][j+1], posY[i][j+1]);
-				model.addQuad(negY[i][j], negY[i][j+1], negY[i+1][j+1], negY[i+1][j]);
+				mesh.addQuad(posY[i][j], posY[i+1][j], posY[i+1][j+1], posY[i][j+1]);
+				mesh.addQuad(negY[i][j], negY[i][j+1], negY[i+1][j+1], negY[i+1][j]);
 				
-				model.addQuad(posZ[i][j], posZ[i][j+1], posZ[i+1][j+1], posZ[i+1][j]);
-				model.addQuad(negZ[i][j], negZ[i+1][j], negZ[i+1][j+1], negZ[i][j+1]);
+				mesh.addQuad(posZ[i][j], posZ[i][j+1], posZ[i+1][j+1], posZ[i+1][j]);
+				mesh.addQuad(negZ[i][j], negZ[i+1][j], negZ[i+1][j+1], negZ[i][j+1]);
 			}
 		}
 		
 		setShaderProgram(EShaderProgram.CUBIC);
-		setModel(model);
+		setModel(new Model(mesh));
 		setTexture(ETexture.STARFIELD);
 		
 		setColor(new float[] {0, 0, 0});
 		setEmission(new float[] {1, 1, 1});
 	}
 	
-	private int addVertex(Model model, Vector3 sphereCoords) {
-		sphereCoords.normalize();
-		Vector3 pos = new Vector3(sphereCoords.x * radius, sphereCoords.y * radius, sphereCoords.z * radius);
-		Vector3 normal = new Vector3(-sphereCoords.x, -sphereCoords.y, -sphereCoords.z);
-		Vector3 texCoord = new Vector3(sphereCoords);
-		normal.normalize();
-		return model.addVertex(new Vertex(pos, normal, texCoord));
+	private int addVertex(MeshBuilder mesh, double x, double y, double z) {
+		double length = Math.sqrt(x*x + y*y + z*z);
+		x /= length; y /= length; z /= length;
+		
+		return mesh.addVertex(x * radius, y * radius, z * radius, -x, -y, -z, x, y, z);
 	}
 }
@@ -1,10 +1,8 @@
 package net.patowen.planetarium.model;
 
 import net.patowen.planetarium.math.MathHelper;
-import net.patowen.planetarium.math.Vector2;
 import net.patowen.planetarium.math.Vector3;
-import net.patowen.planetarium.rendering.Model;
-import net.patowen.planetarium.rendering.Vertex;
+import net.patowen.planetarium.rendering.MeshBuilder;
 
 public class VertexGrid {
 	private static class TexCoordInfo {
@@ -43,7 +41,7 @@ public class VertexGrid {
 		texCoordInfo = t;
 	}
 	
-	public void addToModel(Model model) {
+	public void addToMesh(MeshBuilder mesh) {
 		TexCoordInfo t = texCoordInfo;
 		
 		int start0 = MathHelper.modBound(t.offset0, t.size0, -t.size0+1);
@@ -54,15 +52,17 @@ public class VertexGrid {
 				int[][] vertices = new int[t.size0+1][t.size1+1];
 				for (int j0=Math.max(i0, 0); j0<=Math.min(i0+t.size0, size0); j0++) {
 					for (int j1=Math.max(i1, 0); j1<=Math.min(i1+t.size1, size1); j1++) {
-						Vector2 texCoord = new Vector2((double)(j0-i0)/t.size0, (double)(j1-i1)/t.size1);
-						texCoord.x = texCoord.x*t.upper0 + (1-texCoord.x)*t.lower0;
-						texCoord.y = texCoord.y*t.upper1 + (1-texCoord.y)*t.lower1;
-						vertices[j0-i0][j1-i1] = model.addVertex(new Vertex(positions[j0][j1], normals[j0][j1], texCoord));
+						double u = (double)(j0-i0)/t.size0, v = (double)(j1-i1)/t.size1;
+						Vector3 position = positions[j0][j1], normal = normals[j0][j1];
+						vertices[j0-i0][j1-i1] = mesh.addVertex(
+								position.x, position.y, position.z,
+								normal.x, normal.y, normal.z,
+								u*t.upper0 + (1-u)*t.lower0, v*t.upper1 + (1-v)*t.lower1);
 					}
 				}
 				for (int j0=Math.max(i0, 0); j0<Math.min(i0+t.size0, size0); j0++) {
 					for (int j1=Math.max(i1, 0); j1<Math.min(i1+t.size1, size1); j1++) {
-						model.addQuad(
+						mesh.addQuad(
 								vertices[j0-i0][j1-i1],
 								vertices[j0-i0+1][j1-i1],
 								vertices[j0-i0+1][j1-i1+1],
@@ -2,5 +2,7 @@ package net.patowen.planetarium.rendering;
 
 public enum EShaderProgram {
 	STANDARD,
-	CUBIC
+	CUBIC,
+	INSTANCED,
+	INSTANCED_CUBIC
 }
@@ -0,0 +1,129 @@
+package net.patowen.planetarium.rendering;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.jogamp.opengl.GL3;
+
+/**
+ * A debugging aid that counts the OpenGL calls made through a {@code GL3}. The counted
+ * {@code GL3} forwards each call to another one if given, or otherwise does nothing and
+ * returns zero, false, or null, so rendering code can be exercised without a GPU.
+ * @author Patrick Owen
+ */
+public class GLCallCounter implements InvocationHandler {
+	private GL3 delegate;
+	private TreeMap<String, Integer> counts;
+	private GL3 gl;
+	
+	/**
+	 * Counts calls without forwarding them anywhere
+	 */
+	public GLCallCounter() {
+		this(null);
+	}
+	
+	/**
+	 * @param delegate the {@code GL3} to forward calls to, or null to forward them nowhere
+	 */
+	public GLCallCounter(GL3 delegate) {
+		this.delegate = delegate;
+		counts = new TreeMap<>();
+		gl = (GL3)Proxy.newProxyInstance(GL3.class.getClassLoader(), new Class<?>[] {GL3.class}, this);
+	}
+	
+	/**
+	 * @return the {@code GL3} whose calls are counted
+	 */
+	public GL3 getGL() {
+		return gl;
+	}
+	
+	/**
+	 * @param name the name of an OpenGL method, such as {@code "glUniform"}
+	 * @return the number of calls to methods of that name since the last reset
+	 */
+	public int getCount(String name) {
+		return counts.getOrDefault(name, 0);
+	}
+	
+	/**
+	 * @param prefix the start of the names of OpenGL methods, such as {@code "glUniform"}
+	 * @return the number of calls to methods whose names start with the prefix since the last reset
+	 */
+	public int getCountStartingWith(String prefix) {
+		int total = 0;
+		for (int count : counts.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+			total += count;
+		}
+		return total;
+	}
+	
+	/**
+	 * @return the number of calls to any method since the last reset
+	 */
+	public int getTotal() {
+		int total = 0;
+		for (int count : counts.values()) {
+			total += count;
+		}
+		return total;
+	}
+	
+	public void reset() {
+		counts.clear();
+	}
+	
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			return invokeObjectMethod(proxy, method, args);
+		}
+		
+		counts.merge(method.getName(), 1, Integer::sum);
+		
+		if (delegate != null) {
+			try {
+				return method.invoke(delegate, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+		return defaultValue(method.getReturnType());
+	}
+	
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+		switch (method.getName()) {
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		default:
+			return "Counted " + (delegate == null ? "GL3" : delegate.toString());
+		}
+	}
+	
+	private static Object defaultValue(Class<?> type) {
+		if (!type.isPrimitive() || type == void.class) return null;
+		if (type == boolean.class) return false;
+		if (type == char.class) return '\0';
+		if (type == byte.class) return (byte)0;
+		if (type == short.class) return (short)0;
+		if (type == int.class) return 0;
+		if (type == long.class) return 0L;
+		if (type == float.class) return 0f;
+		return 0.0;
+	}
+	
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		str.append(getTotal()).append(" OpenGL calls\n");
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			str.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+		}
+		return str.toString();
+	}
+}
@@ -0,0 +1,126 @@
+package net.patowen.planetarium.rendering;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import com.jogamp.common.nio.Buffers;
+
+import net.patowen.planetarium.math.Transform;
+
+/**
+ * Collects the transformations and colors of many copies of the same {@code SceneNodeType},
+ * so that they can all be drawn with one instanced draw call. The transformations are kept in
+ * double precision and only combined with the view and converted to floats when the batch is
+ * packed, so distant instances keep their precision.
+ * @author Patrick Owen
+ */
+public class InstanceBatch {
+	/** The number of floats for each instance in a packed buffer: a 4x4 matrix and a color */
+	public static final int FLOATS_PER_INSTANCE = 20;
+	
+	private int count;
+	private double[] transforms; // 12 per instance: the x, y, z, and w columns
+	private float[] colors; // 4 per instance
+	
+	private FloatBuffer packed;
+	private Transform instance;
+	private double nearestDistance; // Found by the last pack
+	private int level; // The level of detail the batch was last drawn with, or -1
+	
+	public InstanceBatch() {
+		transforms = new double[12 * 16];
+		colors = new float[4 * 16];
+		packed = Buffers.newDirectFloatBuffer(FLOATS_PER_INSTANCE * 16);
+		instance = new Transform();
+		level = -1;
+	}
+	
+	/**
+	 * Removes every instance, keeping the storage for the next frame
+	 */
+	public void clear() {
+		count = 0;
+	}
+	
+	/**
+	 * @return the number of instances in the batch
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * Adds an instance to the batch
+	 * @param t the transformation of the instance, relative to where the batch is rendered
+	 * @param color a 3-element array to multiply the color of the instance by
+	 */
+	public void add(Transform t, float[] color) {
+		if (color.length < 3) {
+			throw new IllegalArgumentException("Color needs 3 components: " + color.length);
+		}
+		
+		if (count * 12 == transforms.length) {
+			transforms = Arrays.copyOf(transforms, transforms.length * 2);
+			colors = Arrays.copyOf(colors, colors.length * 2);
+		}
+		
+		int base = count * 12;
+		transforms[base] = t.x.x; transforms[base+1] = t.x.y; transforms[base+2] = t.x.z;
+		transforms[base+3] = t.y.x; transforms[base+4] = t.y.y; transforms[base+5] = t.y.z;
+		transforms[base+6] = t.z.x; transforms[base+7] = t.z.y; transforms[base+8] = t.z.z;
+		transforms[base+9] = t.w.x; transforms[base+10] = t.w.y; transforms[base+11] = t.w.z;
+		
+		System.arraycopy(color, 0, colors, count * 4, 3);
+		colors[count * 4 + 3] = 1;
+		count++;
+	}
+	
+	/**
+	 * Writes each instance's transformation, combined with the given one, as a column-major
+	 * matrix followed by its color
+	 * @param view the transformation from the space the batch is rendered in to the view
+	 * @return a direct buffer with {@code FLOATS_PER_INSTANCE} floats for each instance,
+	 * positioned at the start. It is reused by the next call.
+	 */
+	public FloatBuffer pack(Transform view) {
+		if (packed.capacity() < count * FLOATS_PER_INSTANCE) {
+			packed = Buffers.newDirectFloatBuffer(transforms.length / 12 * FLOATS_PER_INSTANCE);
+		}
+		
+		packed.clear();
+		nearestDistance = Double.POSITIVE_INFINITY;
+		for (int i=0; i<count; i++) {
+			int base = i * 12;
+			instance.x.set(transforms[base], transforms[base+1], transforms[base+2]);
+			instance.y.set(transforms[base+3], transforms[base+4], transforms[base+5]);
+			instance.z.set(transforms[base+6], transforms[base+7], transforms[base+8]);
+			instance.w.set(transforms[base+9], transforms[base+10], transforms[base+11]);
+			instance.setProduct(view, instance);
+			nearestDistance = Math.min(nearestDistance, instance.w.magnitude());
+			
+			packed.put((float)instance.x.x).put((float)instance.x.y).put((float)instance.x.z).put(0.0f);
+			packed.put((float)instance.y.x).put((float)instance.y.y).put((float)instance.y.z).put(0.0f);
+			packed.put((float)instance.z.x).put((float)instance.z.y).put((float)instance.z.z).put(0.0f);
+			packed.put((float)instance.w.x).put((float)instance.w.y).put((float)instance.w.z).put(1.0f);
+			packed.put(colors, i * 4, 4);
+		}
+		packed.flip();
+		return packed;
+	}
+	
+	/**
+	 * @return the distance from the view to the origin of the nearest instance, as of the
+	 * last call to {@code pack}, or infinity if the batch was empty
+	 */
+	public double getNearestDistance() {
+		return nearestDistance;
+	}
+	
+	int getLevel() {
+		return level;
+	}
+	
+	void setLevel(int level) {
+		this.level = level;
+	}
+}
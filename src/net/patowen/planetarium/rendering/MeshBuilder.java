@@ -0,0 +1,175 @@
+package net.patowen.planetarium.rendering;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL3;
+
+/**
+ * Accumulates the vertices and elements of a mesh in growable primitive arrays, with each
+ * vertex's position, normal, and texture coordinates already interleaved in the layout
+ * {@code Model} uploads. Elements are uploaded as 16-bit indices whenever there are few
+ * enough vertices.
+ * @author Patrick Owen
+ */
+public class MeshBuilder {
+	private static final int MAX_SHORT_VERTICES = 1 << 16;
+	
+	private int textureDimension;
+	private int floatsPerVertex;
+	
+	private float[] vertexData;
+	private int vertexCount;
+	
+	private int[] elements;
+	private int elementCount;
+	
+	/**
+	 * @param textureDimension the number of texture coordinates of each vertex, 2 or 3
+	 */
+	public MeshBuilder(int textureDimension) {
+		if (textureDimension != 2 && textureDimension != 3) {
+			throw new IllegalArgumentException("Texture dimension must be 2 or 3: " + textureDimension);
+		}
+		this.textureDimension = textureDimension;
+		floatsPerVertex = 3 + 3 + textureDimension;
+		vertexData = new float[floatsPerVertex * 64];
+		elements = new int[3 * 64];
+	}
+	
+	public int getTextureDimension() {
+		return textureDimension;
+	}
+	
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	public int getElementCount() {
+		return elementCount;
+	}
+	
+	/**
+	 * Adds a vertex with two texture coordinates
+	 * @return the index of the new vertex
+	 */
+	public int addVertex(double x, double y, double z, double nx, double ny, double nz, double u, double v) {
+		if (textureDimension != 2) {
+			throw new IllegalStateException("Vertex needs " + textureDimension + " texture coordinates");
+		}
+		int base = startVertex(x, y, z, nx, ny, nz);
+		vertexData[base+6] = (float)u;
+		vertexData[base+7] = (float)v;
+		return vertexCount++;
+	}
+	
+	/**
+	 * Adds a vertex with three texture coordinates
+	 * @return the index of the new vertex
+	 */
+	public int addVertex(double x, double y, double z, double nx, double ny, double nz, double s, double t, double r) {
+		if (textureDimension != 3) {
+			throw new IllegalStateException("Vertex needs " + textureDimension + " texture coordinates");
+		}
+		int base = startVertex(x, y, z, nx, ny, nz);
+		vertexData[base+6] = (float)s;
+		vertexData[base+7] = (float)t;
+		vertexData[base+8] = (float)r;
+		return vertexCount++;
+	}
+	
+	private int startVertex(double x, double y, double z, double nx, double ny, double nz) {
+		int base = vertexCount * floatsPerVertex;
+		if (base == vertexData.length) {
+			vertexData = Arrays.copyOf(vertexData, Math.max(vertexData.length * 2, floatsPerVertex));
+		}
+		vertexData[base] = (float)x;
+		vertexData[base+1] = (float)y;
+		vertexData[base+2] = (float)z;
+		vertexData[base+3] = (float)nx;
+		vertexData[base+4] = (float)ny;
+		vertexData[base+5] = (float)nz;
+		return base;
+	}
+	
+	public void addLine(int v1, int v2) {
+		ensureElements(2);
+		elements[elementCount++] = v1;
+		elements[elementCount++] = v2;
+	}
+	
+	public void addTriangle(int v1, int v2, int v3) {
+		ensureElements(3);
+		elements[elementCount++] = v1;
+		elements[elementCount++] = v2;
+		elements[elementCount++] = v3;
+	}
+	
+	public void addQuad(int v1, int v2, int v3, int v4) {
+		addTriangle(v1, v2, v3);
+		addTriangle(v1, v3, v4);
+	}
+	
+	private void ensureElements(int added) {
+		if (elementCount + added > elements.length) {
+			elements = Arrays.copyOf(elements, Math.max(elements.length * 2, elementCount + added));
+		}
+	}
+	
+	/**
+	 * Releases the unused capacity left by growing the arrays, for meshes that are kept once
+	 * they are complete
+	 */
+	public void trimToSize() {
+		vertexData = Arrays.copyOf(vertexData, vertexCount * floatsPerVertex);
+		elements = Arrays.copyOf(elements, elementCount);
+	}
+	
+	/**
+	 * @return a direct buffer with the interleaved data of every vertex
+	 */
+	public FloatBuffer createVertexBuffer() {
+		FloatBuffer buffer = Buffers.newDirectFloatBuffer(vertexCount * floatsPerVertex);
+		buffer.put(vertexData, 0, vertexCount * floatsPerVertex);
+		buffer.rewind();
+		return buffer;
+	}
+	
+	/**
+	 * @return GL_UNSIGNED_SHORT if every index fits in 16 bits, or GL_UNSIGNED_INT otherwise
+	 */
+	public int getElementType() {
+		return vertexCount <= MAX_SHORT_VERTICES ? GL3.GL_UNSIGNED_SHORT : GL3.GL_UNSIGNED_INT;
+	}
+	
+	/**
+	 * @return the number of bytes in each index of the element buffer
+	 */
+	public int getElementSize() {
+		return getElementType() == GL3.GL_UNSIGNED_SHORT ? 2 : 4;
+	}
+	
+	/**
+	 * @return a direct buffer with every element, as a {@code ShortBuffer} or {@code IntBuffer}
+	 * depending on {@code getElementType}
+	 */
+	public Buffer createElementBuffer() {
+		if (getElementType() == GL3.GL_UNSIGNED_SHORT) {
+			ShortBuffer buffer = Buffers.newDirectShortBuffer(elementCount);
+			for (int i=0; i<elementCount; i++) {
+				buffer.put((short)elements[i]);
+			}
+			buffer.rewind();
+			return buffer;
+		} else {
+			IntBuffer buffer = Buffers.newDirectIntBuffer(elementCount);
+			buffer.put(elements, 0, elementCount);
+			buffer.rewind();
+			return buffer;
+		}
+	}
+}
@@ -1,54 +1,60 @@
 package net.patowen.planetarium.rendering;
 
+import java.nio.Buffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.ArrayList;
 
 import com.jogamp.common.nio.Buffers;
 import com.jogamp.opengl.GL3;
 
 public class Model {
-	private ArrayList<Vertex> vertices;
-	private ArrayList<Integer> elements;
+	/** The first of the four attribute locations holding the columns of each instance's transformation */
+	public static final int INSTANCE_TRANSFORM_ATTRIBUTE = 3;
+	public static final int INSTANCE_COLOR_ATTRIBUTE = 7;
+	
+	private MeshBuilder mesh; // Kept so the buffers can be uploaded again to a new context
+	private int elementCount;
+	private int elementType;
 	
 	private int vertexArrayObject;
+	private int vertexBufferPos, elementBufferPos;
 	
 	private IntBuffer vertexArrayObjects;
 	private IntBuffer bufferObjects;
 	
+	// Created the first time the model is drawn instanced
+	private int instancedArrayObject;
+	private int instanceBufferPos;
+	
 	private int primitiveType;
 	private int textureDimension;
 	
-	public Model() {
-		vertices = new ArrayList<>();
-		elements = new ArrayList<>();
+	/**
+	 * @param mesh the vertices and elements to upload when the model is initialized, which
+	 * should not be changed afterwards
+	 */
+	public Model(MeshBuilder mesh) {
+		mesh.trimToSize();
+		this.mesh = mesh;
 		primitiveType = GL3.GL_TRIANGLES;
-		textureDimension = 2;
+		textureDimension = mesh.getTextureDimension();
+		elementCount = mesh.getElementCount();
+		elementType = mesh.getElementType();
 	}
 	
 	public void setPrimitiveType(int primitiveType) {
 		this.primitiveType = primitiveType;
 	}
 	
-	public void setTextureDimension(int textureDimension) {
-		this.textureDimension = textureDimension;
-	}
-	
+	/**
+	 * Uploads the mesh to new buffers. This is called again whenever the OpenGL context is
+	 * recreated, since the previous buffers belonged to the old context.
+	 * @param gl
+	 */
 	public void init(GL3 gl) {
-		int floatsPerVertex = 3 + 3 + textureDimension;
-		int bytesPerVertex = 4 * floatsPerVertex;
-		FloatBuffer vertexBuffer = Buffers.newDirectFloatBuffer(floatsPerVertex * vertices.size());
-		IntBuffer elementBuffer = Buffers.newDirectIntBuffer(elements.size());
-		
-		for (Vertex vertex : vertices) {
-			vertex.use(vertexBuffer);
-		}
-		vertexBuffer.rewind();
-		
-		for (int element : elements) {
-			elementBuffer.put(element);
-		}
-		elementBuffer.rewind();
+		FloatBuffer vertexBuffer = mesh.createVertexBuffer();
+		Buffer elementBuffer = mesh.createElementBuffer();
+		int elementSize = mesh.getElementSize();
 		
 		vertexArrayObjects = Buffers.newDirectIntBuffer(1);
 		gl.glGenVertexArrays(1, vertexArrayObjects);
@@ -56,51 +62,97 @@ public class Model {
 		
 		bufferObjects = Buffers.newDirectIntBuffer(2);
 		gl.glGenBuffers(2, bufferObjects);
-		int vertexBufferPos = bufferObjects.get(0);
-		int elementBufferPos = bufferObjects.get(1);
+		vertexBufferPos = bufferObjects.get(0);
+		elementBufferPos = bufferObjects.get(1);
 		
 		gl.glBindVertexArray(vertexArrayObject);
+		
+		gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vertexBufferPos);
+		gl.glBufferData(GL3.GL_ARRAY_BUFFER, vertexBuffer.capacity() * 4, vertexBuffer, GL3.GL_STATIC_DRAW);
+		gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, elementBufferPos);
+		gl.glBufferData(GL3.GL_ELEMENT_ARRAY_BUFFER, elementBuffer.capacity() * elementSize, elementBuffer, GL3.GL_STATIC_DRAW);
+		setVertexAttributes(gl);
+		
+		gl.glBindVertexArray(0);
+		instancedArrayObject = 0;
+	}
+	
+	/**
+	 * Points the per-vertex attributes of the bound vertex array object at this model's buffers
+	 */
+	private void setVertexAttributes(GL3 gl) {
+		int bytesPerVertex = 4 * (3 + 3 + textureDimension);
+		
 		gl.glEnableVertexAttribArray(0);
 		gl.glEnableVertexAttribArray(1);
 		gl.glEnableVertexAttribArray(2);
 		
 		gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vertexBufferPos);
-		gl.glBufferData(GL3.GL_ARRAY_BUFFER, vertexBuffer.capacity() * 4, vertexBuffer, GL3.GL_STATIC_DRAW);
 		gl.glVertexAttribPointer(0, 3, GL3.GL_FLOAT, false, bytesPerVertex, 0);
 		gl.glVertexAttribPointer(1, 3, GL3.GL_FLOAT, false, bytesPerVertex, 4 * 3);
 		gl.glVertexAttribPointer(2, textureDimension, GL3.GL_FLOAT, false, bytesPerVertex, 4 * (3 + 3));
 		
 		gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, elementBufferPos);
-		gl.glBufferData(GL3.GL_ELEMENT_ARRAY_BUFFER, elementBuffer.capacity()*4, elementBuffer, GL3.GL_STATIC_DRAW);
-		
-		gl.glBindVertexArray(0);
 	}
 	
-	public int addVertex(Vertex vertex) {
-		int nextVertex = vertices.size();
-		vertices.add(vertex);
-		return nextVertex;
-	}
-	
-	public void addLine(int v1, int v2) {
-		elements.add(v1);
-		elements.add(v2);
-	}
-	
-	public void addTriangle(int v1, int v2, int v3) {
-		elements.add(v1);
-		elements.add(v2);
-		elements.add(v3);
-	}
-	
-	public void addQuad(int v1, int v2, int v3, int v4) {
-		addTriangle(v1, v2, v3);
-		addTriangle(v1, v3, v4);
+	/**
+	 * Creates a second vertex array object sharing this model's buffers, with the per-instance
+	 * attributes added and read from a buffer of packed instances
+	 */
+	private void initInstanced(GL3 gl) {
+		IntBuffer handle = Buffers.newDirectIntBuffer(1);
+		gl.glGenVertexArrays(1, handle);
+		instancedArrayObject = handle.get(0);
+		gl.glGenBuffers(1, handle);
+		instanceBufferPos = handle.get(0);
+		
+		gl.glBindVertexArray(instancedArrayObject);
+		setVertexAttributes(gl);
+		
+		int bytesPerInstance = 4 * InstanceBatch.FLOATS_PER_INSTANCE;
+		gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, instanceBufferPos);
+		for (int column = 0; column < 4; column++) {
+			int attribute = INSTANCE_TRANSFORM_ATTRIBUTE + column;
+			gl.glEnableVertexAttribArray(attribute);
+			gl.glVertexAttribPointer(attribute, 4, GL3.GL_FLOAT, false, bytesPerInstance, 4 * 4 * column);
+			gl.glVertexAttribDivisor(attribute, 1);
+		}
+		gl.glEnableVertexAttribArray(INSTANCE_COLOR_ATTRIBUTE);
+		gl.glVertexAttribPointer(INSTANCE_COLOR_ATTRIBUTE, 4, GL3.GL_FLOAT, false, bytesPerInstance, 4 * 16);
+		gl.glVertexAttribDivisor(INSTANCE_COLOR_ATTRIBUTE, 1);
+		
+		gl.glBindVertexArray(0);
 	}
 	
 	public void render(GL3 gl) {
 		gl.glBindVertexArray(vertexArrayObject);
-		gl.glDrawElements(primitiveType, elements.size(), GL3.GL_UNSIGNED_INT, 0);
+		gl.glDrawElements(primitiveType, elementCount, elementType, 0);
+		gl.glBindVertexArray(0);
+	}
+	
+	/**
+	 * Draws the model once for each instance with a single draw call
+	 * @param gl
+	 * @param instances the instances packed by {@link InstanceBatch#pack}
+	 * @param count the number of instances
+	 */
+	public void renderInstanced(GL3 gl, FloatBuffer instances, int count) {
+		if (instances.remaining() != count * InstanceBatch.FLOATS_PER_INSTANCE) {
+			throw new IllegalArgumentException("Expected " + count * InstanceBatch.FLOATS_PER_INSTANCE
+					+ " floats for " + count + " instances, but the buffer has " + instances.remaining());
+		}
+		
+		if (instancedArrayObject == 0) {
+			initInstanced(gl);
+		}
+		
+		// Respecifying the whole buffer lets the driver hand back fresh storage instead of
+		// waiting for the previous frame's draw to finish reading it
+		gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, instanceBufferPos);
+		gl.glBufferData(GL3.GL_ARRAY_BUFFER, instances.remaining() * 4, instances, GL3.GL_STREAM_DRAW);
+		
+		gl.glBindVertexArray(instancedArrayObject);
+		gl.glDrawElementsInstanced(primitiveType, elementCount, elementType, 0, count);
 		gl.glBindVertexArray(0);
 	}
 }
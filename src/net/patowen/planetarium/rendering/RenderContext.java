@@ -15,33 +15,73 @@ public class RenderContext {
 	private ShaderUniformHandler shaderUniformHandler;
 	private TextureBank textureBank;
 	
-	private int standardShader, cubicShader;
-	private int currentProgram;
+	private int standardShader, cubicShader, instancedShader, instancedCubicShader;
+	private EShaderProgram currentProgram;
+	private int boundProgram; // The program last passed to glUseProgram
+	
+	private double projectionScale;
 	
 	public void initShaders(GL3 gl) {
 		initStandardShader(gl);
 		initCubicShader(gl);
-		
-		shaderUniformHandler = new ShaderUniformHandler(gl);
+		instancedShader = initInstancedShader(gl, "instanced");
+		instancedCubicShader = initInstancedShader(gl, "instanced_cubic");
+		initUniforms(gl);
 		
 		textureBank = new TextureBank();
 		textureBank.initTextures(gl);
-		
-		currentProgram = standardShader;
+	}
+	
+	/**
+	 * Creates the uniform handler and connects it to every program. This is kept apart from
+	 * compiling the programs and loading the textures so that {@code RenderingCheck} can run
+	 * it without a GPU.
+	 * @param gl
+	 */
+	void initUniforms(GL3 gl) {
+		shaderUniformHandler = new ShaderUniformHandler(gl);
+		shaderUniformHandler.link(gl, standardShader);
+		shaderUniformHandler.link(gl, cubicShader);
+		shaderUniformHandler.link(gl, instancedShader);
+		shaderUniformHandler.link(gl, instancedCubicShader);
+		
+		currentProgram = EShaderProgram.STANDARD;
+		boundProgram = 0;
+		gl.glUseProgram(0);
 	}
 	
 	public ShaderUniformHandler getShaderUniformHandler() {
 		return shaderUniformHandler;
 	}
 	
+	/**
+	 * Sets how large things appear on screen, for choosing levels of detail. This should be
+	 * kept consistent with the perspective matrix.
+	 * @param projectionScale the height in pixels of an object one unit tall at a distance of one unit
+	 */
+	public void setProjectionScale(double projectionScale) {
+		this.projectionScale = projectionScale;
+	}
+	
+	public double getProjectionScale() {
+		return projectionScale;
+	}
+	
 	public void setShader(GL3 gl, EShaderProgram shader) {
+		currentProgram = shader;
+	}
+	
+	private int getProgramHandle(EShaderProgram shader) {
 		switch (shader) {
-		case STANDARD:
-			currentProgram = standardShader;
-			break;
 		case CUBIC:
-			currentProgram = cubicShader;
-			break;
+			return cubicShader;
+		case INSTANCED:
+			return instancedShader;
+		case INSTANCED_CUBIC:
+			return instancedCubicShader;
+		case STANDARD:
+		default:
+			return standardShader;
 		}
 	}
 	
@@ -93,6 +133,35 @@ public class RenderContext {
 		cubicShader = prog.program();
 	}
 	
+	/**
+	 * Compiles and links a shader that reads a transformation and color for each instance
+	 * @param name the name of the shader files, without the _vs or _fs suffix
+	 * @return the handle of the program
+	 */
+	private int initInstancedShader(GL3 gl, String name) {
+		ShaderProgram prog = new ShaderProgram();
+		prog.init(gl);
+		
+		ShaderCode vsCode = getShaderCode(GL3.GL_VERTEX_SHADER, name + "_vs");
+		vsCode.compile(gl);
+		prog.add(vsCode);
+		
+		ShaderCode fsCode = getShaderCode(GL3.GL_FRAGMENT_SHADER, name + "_fs");
+		fsCode.compile(gl);
+		prog.add(fsCode);
+		
+		gl.glBindAttribLocation(prog.program(), 0, "vertex_in");
+		gl.glBindAttribLocation(prog.program(), 1, "normal_in");
+		gl.glBindAttribLocation(prog.program(), 2, "tex_coord_in");
+		gl.glBindAttribLocation(prog.program(), Model.INSTANCE_TRANSFORM_ATTRIBUTE, "instance_transform");
+		gl.glBindAttribLocation(prog.program(), Model.INSTANCE_COLOR_ATTRIBUTE, "instance_color");
+		
+		prog.link(gl, System.err);
+		prog.validateProgram(gl, System.err);
+		
+		return prog.program();
+	}
+	
 	/**
 	 * Returns a {@code ShaderCode} object for the specified file
 	 * @param type GL_VERTEX_SHADER, GL_GEOMETRY_SHADER, GL_FRAGMENT_SHADER, etc.
@@ -118,12 +187,16 @@ public class RenderContext {
 	}
 	
 	/**
-	 * Sets all the uniforms of the shader to the currently stored values. This
-	 * should be called before drawing anything if anything was changed.
+	 * Switches to the current shader if necessary and uploads the uniforms.
+	 * This should be called before drawing anything if anything was changed.
 	 * @param gl
 	 */
 	public void update(GL3 gl) {
-		gl.glUseProgram(currentProgram);
-		shaderUniformHandler.update(gl, currentProgram);
+		int program = getProgramHandle(currentProgram);
+		if (program != boundProgram) {
+			gl.glUseProgram(program);
+			boundProgram = program;
+		}
+		shaderUniformHandler.update(gl);
 	}
 }
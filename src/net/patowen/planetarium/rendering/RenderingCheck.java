@@ -0,0 +1,216 @@
+package net.patowen.planetarium.rendering;
+
+import java.lang.reflect.Proxy;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+
+import com.jogamp.opengl.GL3;
+
+import net.patowen.planetarium.math.Transform;
+import net.patowen.planetarium.math.Vector3;
+import net.patowen.planetarium.model.PlanetCubic;
+
+/**
+ * Exercises the rendering code with a {@link GLCallCounter} in place of OpenGL, so that the
+ * OpenGL calls made for each frame can be checked without a GPU. Run it as a program. It
+ * prints each check that fails and exits with a nonzero status if any did.
+ * @author Patrick Owen
+ */
+public class RenderingCheck {
+	// About as many draws as the default scene makes each frame
+	private static final int DRAWS_PER_FRAME = 11;
+	
+	private int failures;
+	
+	public static void main(String[] args) {
+		RenderingCheck check = new RenderingCheck();
+		check.checkUniformCalls();
+		check.checkUniformBlockUploads();
+		check.checkInstancePacking();
+		check.checkContextRecreation();
+		
+		if (check.failures > 0) {
+			System.out.println(check.failures + " rendering checks failed");
+			System.exit(1);
+		}
+		System.out.println("All rendering checks passed");
+	}
+	
+	private void check(boolean condition, String description) {
+		if (!condition) {
+			System.out.println("Failed: " + description);
+			failures++;
+		}
+	}
+	
+	/**
+	 * Draws several frames and checks that uniforms are never looked up by name or set one at
+	 * a time while drawing, and that nothing is uploaded again when nothing has changed
+	 */
+	private void checkUniformCalls() {
+		GLCallCounter counter = new GLCallCounter();
+		GL3 gl = counter.getGL();
+		RenderContext sh = new RenderContext();
+		sh.initUniforms(gl);
+		Model model = createTriangle(gl);
+		
+		for (int frame=0; frame<3; frame++) {
+			counter.reset();
+			drawFrame(gl, sh, model);
+			check(counter.getCount("glGetUniformLocation") == 0, "Frame " + frame + " looked up uniform locations\n" + counter);
+			check(counter.getCountStartingWith("glUniform") == 0, "Frame " + frame + " set uniforms individually\n" + counter);
+			check(counter.getCount("glDrawElements") == DRAWS_PER_FRAME, "Frame " + frame + " did not draw every scene node\n" + counter);
+		}
+		
+		ShaderUniformHandler suh = sh.getShaderUniformHandler();
+		suh.pushTransformation();
+		suh.addTransformation(Transform.translation(new Vector3(0, 0, -10)));
+		sh.update(gl);
+		counter.reset();
+		sh.update(gl);
+		check(counter.getTotal() == 0, "Updating unchanged uniforms called OpenGL\n" + counter);
+		suh.popTransformation();
+	}
+	
+	/**
+	 * Checks that each frame uploads the per-frame block once and the per-object block once
+	 * for each draw, each as one write to the ring and one bind, without orphaning the ring
+	 */
+	private void checkUniformBlockUploads() {
+		GLCallCounter counter = new GLCallCounter();
+		GL3 gl = counter.getGL();
+		RenderContext sh = new RenderContext();
+		sh.initUniforms(gl);
+		Model model = createTriangle(gl);
+		
+		int uploads = DRAWS_PER_FRAME + 1;
+		for (int frame=0; frame<3; frame++) {
+			counter.reset();
+			drawFrame(gl, sh, model);
+			int calls = counter.getCount("glBufferSubData") + counter.getCount("glBindBufferRange") + counter.getCount("glBufferData");
+			check(counter.getCount("glBufferSubData") == uploads && calls == 2 * uploads,
+					"Frame " + frame + " made " + calls + " uniform buffer calls instead of " + 2 * uploads + "\n" + counter);
+		}
+	}
+	
+	/**
+	 * Packs more instances than an {@code InstanceBatch} starts with room for and checks each
+	 * one's column-major matrix, padding, and color, along with the nearest distance
+	 */
+	private void checkInstancePacking() {
+		InstanceBatch batch = new InstanceBatch();
+		Transform view = Transform.translation(new Vector3(-1e6, 0, 0));
+		
+		int count = 40;
+		for (int i=0; i<count; i++) {
+			Transform t = Transform.rotation(new Vector3(0, 0, 1), i * 0.1);
+			t.w.set(1e6 + 50 - i, 2 * i, 3);
+			batch.add(t, new float[] {i, 0.5f, 0.25f, 0});
+		}
+		
+		FloatBuffer packed = batch.pack(view);
+		check(packed.position() == 0 && packed.remaining() == count * InstanceBatch.FLOATS_PER_INSTANCE,
+				"Packed " + packed.remaining() + " floats for " + count + " instances");
+		
+		Transform expected = new Transform();
+		double nearest = Double.POSITIVE_INFINITY;
+		for (int i=0; i<count && packed.remaining() == count * InstanceBatch.FLOATS_PER_INSTANCE; i++) {
+			Transform t = Transform.rotation(new Vector3(0, 0, 1), i * 0.1);
+			t.w.set(1e6 + 50 - i, 2 * i, 3);
+			expected.setProduct(view, t);
+			nearest = Math.min(nearest, expected.w.magnitude());
+			
+			int base = i * InstanceBatch.FLOATS_PER_INSTANCE;
+			Vector3[] columns = {expected.x, expected.y, expected.z, expected.w};
+			for (int column=0; column<4; column++) {
+				int offset = base + column * 4;
+				check(packed.get(offset) == (float)columns[column].x
+						&& packed.get(offset + 1) == (float)columns[column].y
+						&& packed.get(offset + 2) == (float)columns[column].z,
+						"Column " + column + " of instance " + i + " was packed out of place");
+				check(packed.get(offset + 3) == (column == 3 ? 1 : 0),
+						"Column " + column + " of instance " + i + " has the wrong fourth component");
+			}
+			check(packed.get(base + 16) == i && packed.get(base + 17) == 0.5f && packed.get(base + 18) == 0.25f,
+					"Instance " + i + " has the wrong color");
+			check(packed.get(base + 19) == 1, "The alpha of instance " + i + " was not 1");
+		}
+		check(batch.getNearestDistance() == nearest,
+				"Nearest distance was " + batch.getNearestDistance() + " instead of " + nearest);
+		
+		batch.clear();
+		check(batch.pack(view).remaining() == 0 && batch.getNearestDistance() == Double.POSITIVE_INFINITY,
+				"An empty batch packed instances or had a nearest distance");
+	}
+	
+	/**
+	 * Initializes a scene node type with several levels of detail twice, as happens when the
+	 * OpenGL context is recreated, and checks that the second time uploads the same meshes
+	 */
+	private void checkContextRecreation() {
+		ArrayList<Long> uploadSizes = new ArrayList<>();
+		// Model.init only makes calls that return nothing
+		GL3 recorder = (GL3)Proxy.newProxyInstance(GL3.class.getClassLoader(), new Class<?>[] {GL3.class}, (proxy, method, args) -> {
+			if (method.getName().equals("glBufferData")) {
+				uploadSizes.add((Long)args[1]);
+			}
+			return null;
+		});
+		GLCallCounter counter = new GLCallCounter(recorder);
+		GL3 gl = counter.getGL();
+		
+		PlanetCubic planet = new PlanetCubic(ETexture.EARTH, 1, 1, false);
+		try {
+			planet.renderInit(gl);
+			int firstCalls = counter.getTotal();
+			ArrayList<Long> firstSizes = new ArrayList<>(uploadSizes);
+			
+			counter.reset();
+			uploadSizes.clear();
+			planet.renderInit(gl);
+			check(counter.getTotal() == firstCalls, "Initializing again made " + counter.getTotal()
+					+ " OpenGL calls instead of " + firstCalls);
+			check(!firstSizes.isEmpty() && !firstSizes.contains(0L) && uploadSizes.equals(firstSizes),
+					"Initializing again uploaded " + uploadSizes + " bytes instead of " + firstSizes);
+		} catch (RuntimeException e) {
+			check(false, "Initializing threw " + e);
+		}
+	}
+	
+	/**
+	 * Draws a row of scene nodes the way {@code SceneNodeType.render} does, apart from
+	 * binding textures
+	 */
+	private static void drawFrame(GL3 gl, RenderContext sh, Model model) {
+		ShaderUniformHandler suh = sh.getShaderUniformHandler();
+		float[] white = {1, 1, 1}, black = {0, 0, 0};
+		
+		suh.reset();
+		suh.setPerspective(new float[] {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -1, -1, 0, 0, -2, 0});
+		suh.setLightAmbient(new float[] {0.01f, 0.01f, 0.01f});
+		suh.setLightDiffuse(0, white);
+		
+		for (int i=0; i<DRAWS_PER_FRAME; i++) {
+			sh.setShader(gl, EShaderProgram.STANDARD);
+			suh.pushTransformation();
+			suh.addTransformation(Transform.translation(new Vector3(i, 0, -10)));
+			suh.setMaterialAmbient(white);
+			suh.setMaterialDiffuse(white);
+			suh.setMaterialEmission(black);
+			sh.update(gl);
+			model.render(gl);
+			suh.popTransformation();
+		}
+	}
+	
+	private static Model createTriangle(GL3 gl) {
+		MeshBuilder mesh = new MeshBuilder(2);
+		mesh.addTriangle(
+				mesh.addVertex(0, 0, 0, 0, 0, 1, 0, 0),
+				mesh.addVertex(1, 0, 0, 0, 0, 1, 1, 0),
+				mesh.addVertex(0, 1, 0, 0, 0, 1, 0, 1));
+		Model model = new Model(mesh);
+		model.init(gl);
+		return model;
+	}
+}
@@ -11,6 +11,7 @@ import net.patowen.planetarium.math.Transform;
 public class SceneNode {
 	private SceneNodeType type;
 	private Transform t;
+	private int level; // The level of detail last drawn, kept for its hysteresis
 	
 	/**
 	 * Initializes the SceneNode. No heavy computation is done in this method
@@ -19,6 +20,7 @@ public class SceneNode {
 	public SceneNode(SceneNodeType type) {
 		this.type = type;
 		t = Transform.identity();
+		level = -1;
 	}
 	
 	/**
@@ -34,6 +36,6 @@ public class SceneNode {
 	 * @param gl
 	 */
 	public void render(GL3 gl, RenderContext sh) {
-		type.render(gl, sh, t);
+		level = type.render(gl, sh, t, level);
 	}
 }
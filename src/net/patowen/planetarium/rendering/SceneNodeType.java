@@ -1,11 +1,17 @@
 package net.patowen.planetarium.rendering;
 
+import java.nio.FloatBuffer;
+
 import com.jogamp.opengl.GL3;
 
 import net.patowen.planetarium.math.Transform;
+import net.patowen.planetarium.math.Vector3;
 
 /**
- * Represents a mesh with a texture that can be drawn at any location
+ * Represents a mesh with a texture that can be drawn at any location. The mesh can have several
+ * levels of detail, in which case each frame draws the coarsest one that still looks right at
+ * the size the scene node appears on screen. Each drawn scene node or batch keeps the level it
+ * was last drawn with, since the choice depends on it.
  * @author Patrick Owen
  */
 public abstract class SceneNodeType {
@@ -15,18 +21,45 @@ public abstract class SceneNodeType {
 	private float[] color;
 	private float[] emission;
 	
-	private Model model;
+	// Fraction below a coarser level's limit the screen radius must fall before switching to it,
+	// so that a scene node near a limit does not flicker between levels
+	private static final double LEVEL_HYSTERESIS = 0.2;
+	
+	private Model[] levels; // Coarsest first
+	private double[] maxScreenRadii;
+	private double boundingRadius;
+	
+	private Transform view; // Scratch space for renderBatch
+	private Vector3 viewPosition; // Scratch space for selectLevel
 	
 	public SceneNodeType() {
 		color = new float[] {1, 1, 1};
 		emission = new float[] {0, 0, 0};
-		model = null;
+		levels = null;
 		shader = EShaderProgram.STANDARD;
 		texture = ETexture.BLANK;
+		view = new Transform();
+		viewPosition = new Vector3();
 	}
 	
 	public void setModel(Model model) {
-		this.model = model;
+		setLevelsOfDetail(new Model[] {model}, new double[] {Double.POSITIVE_INFINITY}, 0);
+	}
+	
+	/**
+	 * Sets the meshes to choose between depending on how large the scene node appears
+	 * @param levels the meshes, coarsest first
+	 * @param maxScreenRadii the largest radius in pixels, for each mesh, that the scene node can
+	 * appear with before a finer mesh is needed. The finest mesh is used past every limit.
+	 * @param boundingRadius the radius of a sphere around the origin containing every mesh
+	 */
+	public void setLevelsOfDetail(Model[] levels, double[] maxScreenRadii, double boundingRadius) {
+		if (levels.length == 0 || levels.length != maxScreenRadii.length) {
+			throw new IllegalArgumentException("Each level of detail needs a mesh and a screen radius");
+		}
+		this.levels = levels;
+		this.maxScreenRadii = maxScreenRadii;
+		this.boundingRadius = boundingRadius;
 	}
 	
 	/**
@@ -59,15 +92,46 @@ public abstract class SceneNodeType {
 	 * @param gl
 	 */
 	public void renderInit(GL3 gl) {
-		model.init(gl);
+		for (Model model : levels) {
+			model.init(gl);
+		}
+	}
+	
+	/**
+	 * Chooses the level of detail for a scene node at the given distance. Finer levels are
+	 * chosen as soon as they are needed, but coarser ones only once the scene node is well
+	 * within them.
+	 * @param distance the distance from the view to the origin of the scene node
+	 * @param projectionScale the projection scale of the {@code RenderContext}
+	 * @param current the level chosen last time for the same scene node, or -1 if there was none
+	 * @return the index of the level to draw
+	 */
+	private int selectLevel(double distance, double projectionScale, int current) {
+		if (current < 0 || current >= levels.length) {
+			current = levels.length - 1;
+		}
+		
+		double screenRadius = distance <= boundingRadius ? Double.POSITIVE_INFINITY
+				: boundingRadius * projectionScale / distance;
+		
+		while (current < levels.length - 1 && screenRadius > maxScreenRadii[current]) {
+			current++;
+		}
+		while (current > 0 && screenRadius < maxScreenRadii[current - 1] * (1 - LEVEL_HYSTERESIS)) {
+			current--;
+		}
+		return current;
 	}
 	
 	/**
 	 * Renders the scene node transformed by the given transformation.
 	 * @param gl
 	 * @param t where the scene node should be relocated before rendering
+	 * @param level the level of detail this scene node was last drawn with, or -1 if it has
+	 * not been drawn
+	 * @return the level of detail drawn, to pass in the next time this scene node is drawn
 	 */
-	public void render(GL3 gl, RenderContext sh, Transform t) {
+	public int render(GL3 gl, RenderContext sh, Transform t, int level) {
 		ShaderUniformHandler suh = sh.getShaderUniformHandler();
 		
 		sh.setShader(gl, shader);
@@ -80,8 +144,58 @@ public abstract class SceneNodeType {
 		sh.setTexture(gl, texture);
 		sh.update(gl);
 		
-		model.render(gl);
+		suh.getViewPosition(viewPosition);
+		level = selectLevel(viewPosition.magnitude(), sh.getProjectionScale(), level);
+		levels[level].render(gl);
 		
 		suh.popTransformation();
+		return level;
+	}
+	
+	/**
+	 * Renders every instance in the batch with one draw call, using the instanced variant of
+	 * the scene node's shader. Each instance's color multiplies the color of the scene node,
+	 * while the emission is shared. Every instance uses the level of detail the nearest
+	 * instance needs, and the batch keeps that level for the next time it is drawn.
+	 * @param gl
+	 * @param batch the instances, with transformations relative to the current transformation
+	 * @throws IllegalStateException if the scene node's shader has no instanced variant
+	 */
+	public void renderBatch(GL3 gl, RenderContext sh, InstanceBatch batch) {
+		if (batch.size() == 0) return;
+		
+		ShaderUniformHandler suh = sh.getShaderUniformHandler();
+		
+		sh.setShader(gl, getInstancedShader());
+		
+		suh.pushTransformation();
+		suh.moveToViewSpace(view);
+		suh.setMaterialAmbient(color);
+		suh.setMaterialDiffuse(color);
+		suh.setMaterialEmission(emission);
+		sh.setTexture(gl, texture);
+		sh.update(gl);
+		
+		FloatBuffer instances = batch.pack(view);
+		int level = selectLevel(batch.getNearestDistance(), sh.getProjectionScale(), batch.getLevel());
+		batch.setLevel(level);
+		levels[level].renderInstanced(gl, instances, batch.size());
+		
+		suh.popTransformation();
+	}
+	
+	/**
+	 * @return the shader that reads the same texture coordinates and texture as the scene
+	 * node's shader, along with a transformation and color for each instance
+	 */
+	private EShaderProgram getInstancedShader() {
+		switch (shader) {
+		case STANDARD:
+			return EShaderProgram.INSTANCED;
+		case CUBIC:
+			return EShaderProgram.INSTANCED_CUBIC;
+		default:
+			throw new IllegalStateException("No instanced variant of the " + shader + " shader");
+		}
 	}
 }
@@ -1,12 +1,36 @@
 package net.patowen.planetarium.rendering;
 
 
-import java.nio.Buffer;
+import java.nio.ByteBuffer;
 
-import com.jogamp.opengl.GLUniformData;
-
-public interface ShaderUniformData {
-	public Buffer createBuffer();
-	public void addToBuffer(Buffer buffer);
-	public GLUniformData getGLUniformData(String name, Buffer buffer);
+/**
+ * The value of a uniform as stored on the CPU, which is written into a uniform block using
+ * the std140 layout. Whoever changes the value calls {@code markChanged}, so that blocks
+ * that have not changed do not need to be uploaded again.
+ * @author Patrick Owen
+ */
+public abstract class ShaderUniformData {
+	private int version;
+	
+	/**
+	 * Writes the value in the std140 layout, where each column of a matrix and each element
+	 * of an array starts on a 16-byte boundary
+	 * @param buffer the buffer to write to, in native byte order
+	 * @param offset the position in bytes of the start of the value
+	 */
+	public abstract void addToBlock(ByteBuffer buffer, int offset);
+	
+	/**
+	 * Records that the value has changed and needs to be uploaded again
+	 */
+	public void markChanged() {
+		version++;
+	}
+	
+	/**
+	 * @return a number that changes whenever the value changes
+	 */
+	public int getVersion() {
+		return version;
+	}
 }
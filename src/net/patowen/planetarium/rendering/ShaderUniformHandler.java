@@ -1,9 +1,8 @@
 package net.patowen.planetarium.rendering;
 
-import java.util.Stack;
+import java.util.ArrayList;
 
 import com.jogamp.opengl.GL3;
-import com.jogamp.opengl.GLUniformData;
 
 import net.patowen.planetarium.math.Transform;
 import net.patowen.planetarium.math.Vector2;
@@ -12,62 +11,115 @@ import net.patowen.planetarium.math.Vector3;
 /**
  * {@code ShaderUniformHandler} has two purposes. It holds a Transformation stack for the viewpoint and
  * for hierarchical models, and it interacts with the shader to set the uniforms to the appropriate
- * values.
+ * values. The uniforms are grouped into two std140 blocks. The per-frame block holds the perspective,
+ * the lights, and the noise, and is only uploaded when it changes. The per-object block holds the
+ * transformation, the light positions relative to the object, and the material, and is streamed
+ * through a {@code UniformRing} before every draw.
  * @author Patrick Owen
  */
 public class ShaderUniformHandler {
 	// Matrices
-	private ShaderLink<UniformTransform> transform;
-	private ShaderLink<UniformFloatList> perspective;
-	private ShaderLink<UniformFloatList> color;
+	private UniformTransform transform;
+	private UniformFloatList perspective;
+	private UniformFloatList color; // Not used by the current shaders
 	
 	// Lights
 	private int numLights;
-	private ShaderLink<UniformFloatList> lightAmbient;
-	private ShaderLink<UniformVector31List> lightPosition;
-	private ShaderLink<UniformFloatList> lightDiffuse;
+	private UniformFloatList lightAmbient;
+	private UniformVector31List lightPosition;
+	private UniformFloatList lightDiffuse;
 	
 	// Material
-	private ShaderLink<UniformFloatList> materialAmbient;
-	private ShaderLink<UniformFloatList> materialDiffuse;
-	private ShaderLink<UniformFloatList> materialEmission;
+	private UniformFloatList materialAmbient;
+	private UniformFloatList materialDiffuse;
+	private UniformFloatList materialEmission;
 	
 	// Noise
-	private ShaderLink<UniformVector2> noiseDisplacement; 
+	private UniformVector2 noiseDisplacement;
 	
-	private Stack<Transform> transformStack;
-	private Stack<Vector3[]> lightPositionStack;
+	// Uniform blocks
+	private UniformBlock perFrame, perObject;
+	private UniformRing ring;
+	private int perFrameGeneration, perObjectGeneration; // The generation of the ring each block was last uploaded in
+	
+	// Saved states are kept after popping and overwritten by the next push, so the stack
+	// only allocates when it grows deeper than before
+	private ArrayList<Transform> transformStack;
+	private ArrayList<Vector3[]> lightPositionStack;
+	private int stackDepth;
+	private Transform inverse;
 	
 	/**
 	 * Initializes all values to their defaults
-	 * @param shaderState the {@code ShaderState} representing the shader whose
-	 * uniforms are set
+	 * @param gl used to create the buffer the uniform blocks are streamed through
 	 */
 	public ShaderUniformHandler(GL3 gl) {
-		transformStack = new Stack<>();
-		lightPositionStack = new Stack<>();
+		transformStack = new ArrayList<>();
+		lightPositionStack = new ArrayList<>();
+		stackDepth = 0;
+		inverse = new Transform();
 		numLights = 1;
 		
-		transform = new ShaderLink<>("transform", new UniformTransform(Transform.identity()));
-		perspective = new ShaderLink<>("perspective", new UniformFloatList(4, 4));
-		color = new ShaderLink<>("color", new UniformFloatList(4));
+		transform = new UniformTransform(Transform.identity());
+		perspective = new UniformFloatList(4, 4);
+		color = new UniformFloatList(4);
+		
+		lightAmbient = new UniformFloatList(3);
+		lightPosition = new UniformVector31List(numLights);
+		lightDiffuse = new UniformFloatList(3, 1, numLights);
+		
+		materialAmbient = new UniformFloatList(3);
+		materialDiffuse = new UniformFloatList(3);
+		materialEmission = new UniformFloatList(3);
+		
+		noiseDisplacement = new UniformVector2(new Vector2());
+		
+		// These offsets follow the std140 rules and must match the blocks declared in the shaders
+		perFrame = new UniformBlock("PerFrame", 0, 16 * (6 + numLights));
+		perFrame.add(perspective, 0);
+		perFrame.add(lightAmbient, 64);
+		perFrame.add(lightDiffuse, 80);
+		perFrame.add(noiseDisplacement, 80 + 16*numLights);
 		
-		lightAmbient = new ShaderLink<>("light_ambient", new UniformFloatList(3));
-		lightPosition = new ShaderLink<>("light_position", new UniformVector31List(numLights));
-		lightDiffuse = new ShaderLink<>("light_diffuse", new UniformFloatList(3, 1, numLights));
+		perObject = new UniformBlock("PerObject", 1, 16 * (7 + numLights));
+		perObject.add(transform, 0);
+		perObject.add(lightPosition, 64);
+		perObject.add(materialAmbient, 64 + 16*numLights);
+		perObject.add(materialDiffuse, 80 + 16*numLights);
+		perObject.add(materialEmission, 96 + 16*numLights);
 		
-		materialAmbient = new ShaderLink<>("material_ambient", new UniformFloatList(3));
-		materialDiffuse = new ShaderLink<>("material_diffuse", new UniformFloatList(3));
-		materialEmission = new ShaderLink<>("material_emission", new UniformFloatList(3));
+		ring = new UniformRing(gl, 1 << 18, Math.max(perFrame.getSize(), perObject.getSize()));
+		perFrameGeneration = -1;
+		perObjectGeneration = -1;
+	}
+	
+	/**
+	 * Connects the uniform blocks of a newly linked program and sets the uniforms that never change
+	 * @param gl
+	 * @param shaderProgram the OpenGL handle of the program
+	 */
+	public void link(GL3 gl, int shaderProgram) {
+		perFrame.link(gl, shaderProgram);
+		perObject.link(gl, shaderProgram);
 		
-		noiseDisplacement = new ShaderLink<>("noise_displacement", new UniformVector2(new Vector2()));
+		int noiseTexture = gl.glGetUniformLocation(shaderProgram, "noise_texture");
+		if (noiseTexture >= 0) {
+			gl.glUseProgram(shaderProgram);
+			gl.glUniform1i(noiseTexture, 1);
+		}
 	}
 	
 	/**
-	 * Sets the stored transformation to the identity
+	 * Sets the stored transformation to the identity. This should be called at the start of
+	 * each frame, which is also when the noise moves.
 	 */
 	public void reset() {
-		transform.data.transform = Transform.identity();
+		transform.transform.setIdentity();
+		transform.markChanged();
+		
+		noiseDisplacement.vector.x = Math.random();
+		noiseDisplacement.vector.y = Math.random();
+		noiseDisplacement.markChanged();
 	}
 	
 	/**
@@ -75,20 +127,61 @@ public class ShaderUniformHandler {
 	 * @param t The transformation to apply before the current one
 	 */
 	public void addTransformation(Transform t) {
-		transform.data.transform = transform.data.transform.transform(t);
+		transform.transform.setProduct(transform.transform, t);
+		
+		inverse.setInverse(t);
+		for (int light = 0; light < numLights; light++) {
+			inverse.transformInPlace(lightPosition.vectors[light]);
+		}
 		
-		Transform tInv = t.inverse();
+		transform.markChanged();
+		lightPosition.markChanged();
+	}
+	
+	/**
+	 * Replaces the current transformation with the identity, so that drawing happens directly
+	 * in the view's space, and moves the light positions into that space to match. This is for
+	 * instances whose transformations to the view were already computed.
+	 * @param view the transformation to store the replaced transformation in
+	 */
+	public void moveToViewSpace(Transform view) {
+		view.set(transform.transform);
 		for (int light = 0; light < numLights; light++) {
-			lightPosition.data.vectors[light] = tInv.transform(lightPosition.data.vectors[light]);
+			view.transformInPlace(lightPosition.vectors[light]);
 		}
+		transform.transform.setIdentity();
+		
+		transform.markChanged();
+		lightPosition.markChanged();
+	}
+	
+	/**
+	 * Stores the position of the current object's origin relative to the view
+	 * @param result the vector to store the position in
+	 */
+	public void getViewPosition(Vector3 result) {
+		result.set(transform.transform.w);
 	}
 	
 	/**
 	 * Stores the current transformation onto a stack for later retrieval
 	 */
 	public void pushTransformation() {
-		transformStack.push(transform.data.transform);
-		lightPositionStack.push(lightPosition.data.vectors.clone());
+		if (stackDepth == transformStack.size()) {
+			transformStack.add(new Transform());
+			Vector3[] lightPositions = new Vector3[numLights];
+			for (int light = 0; light < numLights; light++) {
+				lightPositions[light] = new Vector3();
+			}
+			lightPositionStack.add(lightPositions);
+		}
+		
+		transformStack.get(stackDepth).set(transform.transform);
+		Vector3[] lightPositions = lightPositionStack.get(stackDepth);
+		for (int light = 0; light < numLights; light++) {
+			lightPositions[light].set(lightPosition.vectors[light]);
+		}
+		stackDepth++;
 	}
 	
 	/**
@@ -96,8 +189,15 @@ public class ShaderUniformHandler {
 	 * on the stack
 	 */
 	public void popTransformation() {
-		transform.data.transform = transformStack.pop();
-		lightPosition.data.vectors = lightPositionStack.pop();
+		stackDepth--;
+		transform.transform.set(transformStack.get(stackDepth));
+		Vector3[] lightPositions = lightPositionStack.get(stackDepth);
+		for (int light = 0; light < numLights; light++) {
+			lightPosition.vectors[light].set(lightPositions[light]);
+		}
+		
+		transform.markChanged();
+		lightPosition.markChanged();
 	}
 	
 	/**
@@ -106,7 +206,7 @@ public class ShaderUniformHandler {
 	 * 16-value array in column-major order
 	 */
 	public void setPerspective(float[] perspective) {
-		System.arraycopy(perspective, 0, this.perspective.data.list, 0, 16);
+		setList(this.perspective, 0, perspective, 16);
 	}
 	
 	/**
@@ -114,61 +214,68 @@ public class ShaderUniformHandler {
 	 * @param color the color represented via a 4-value array (r, g, b, a)
 	 */
 	public void setColor(float[] color) {
-		System.arraycopy(color, 0, this.color.data.list, 0, 4);
+		setList(this.color, 0, color, 4);
 	}
 	
 	public void setLightAmbient(float[] color) {
-		System.arraycopy(color, 0, lightAmbient.data.list, 0, 3);
+		setList(lightAmbient, 0, color, 3);
 	}
 	
 	public void setLightPosition(int light, Vector3 pos) {
-		lightPosition.data.vectors[light] = pos;
+		lightPosition.vectors[light].set(pos);
+		lightPosition.markChanged();
 	}
 	
 	public void setLightDiffuse(int light, float[] color) {
-		System.arraycopy(color, 0, lightDiffuse.data.list, 3*light, 3);
+		setList(lightDiffuse, 3*light, color, 3);
 	}
 	
 	public void setMaterialAmbient(float[] color) {
-		System.arraycopy(color, 0, materialAmbient.data.list, 0, 3);
+		setList(materialAmbient, 0, color, 3);
 	}
 	
 	public void setMaterialDiffuse(float[] color) {
-		System.arraycopy(color, 0, materialDiffuse.data.list, 0, 3);
+		setList(materialDiffuse, 0, color, 3);
 	}
 	
 	public void setMaterialEmission(float[] color) {
-		System.arraycopy(color, 0, materialEmission.data.list, 0, 3);
+		setList(materialEmission, 0, color, 3);
 	}
 	
-	private void updateNoiseTexture(GL3 gl, int shaderProgram) {
-		GLUniformData uniformData = new GLUniformData("noise_texture", 1);
-		uniformData.setLocation(gl.glGetUniformLocation(shaderProgram, uniformData.getName()));
-		gl.glUniform(uniformData);
+	/**
+	 * Copies values into part of a stored list, marking the list as changed only if
+	 * the values are different, since most setters are called before every draw
+	 */
+	private static void setList(UniformFloatList data, int offset, float[] values, int length) {
+		for (int i=0; i<length; i++) {
+			if (data.list[offset + i] != values[i]) {
+				System.arraycopy(values, 0, data.list, offset, length);
+				data.markChanged();
+				return;
+			}
+		}
 	}
 	
 	/**
-	 * Sets all the uniforms of the shader to the currently stored values. This
-	 * should be called before drawing anything if anything was changed.
+	 * Uploads whichever uniform blocks have changed since they were last uploaded. This should
+	 * be called before drawing anything if anything was changed.
 	 * @param gl
 	 */
-	public void update(GL3 gl, int shaderProgram) {
-		updateNoiseTexture(gl, shaderProgram);
-		
-		transform.update(gl, shaderProgram);
-		perspective.update(gl, shaderProgram);
-		color.update(gl, shaderProgram);
-		
-		lightAmbient.update(gl, shaderProgram);
-		lightPosition.update(gl, shaderProgram);
-		lightDiffuse.update(gl, shaderProgram);
+	public void update(GL3 gl) {
+		if (perFrame.hasChanged() || perFrameGeneration != ring.getGeneration()) {
+			ring.upload(gl, perFrame);
+			perFrameGeneration = ring.getGeneration();
+		}
 		
-		materialAmbient.update(gl, shaderProgram);
-		materialDiffuse.update(gl, shaderProgram);
-		materialEmission.update(gl, shaderProgram);
+		if (perObject.hasChanged() || perObjectGeneration != ring.getGeneration()) {
+			ring.upload(gl, perObject);
+			perObjectGeneration = ring.getGeneration();
+		}
 		
-		noiseDisplacement.data.vector.x = Math.random();
-		noiseDisplacement.data.vector.y = Math.random();
-		noiseDisplacement.update(gl, shaderProgram);
+		// Uploading the per-object block may have orphaned the storage the per-frame block was in
+		if (perFrameGeneration != ring.getGeneration()) {
+			ring.upload(gl, perFrame);
+			perFrameGeneration = ring.getGeneration();
+		}
 	}
 }
@@ -0,0 +1,97 @@
+package net.patowen.planetarium.rendering;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.jogamp.opengl.GL3;
+
+/**
+ * Describes a std140 uniform block as a list of stored values at fixed offsets, which
+ * must match the declaration of the block in the shaders. Each program's block is connected
+ * to a binding point once when the program is linked, so drawing only has to bind the data.
+ * @author Patrick Owen
+ */
+public class UniformBlock {
+	private final String name;
+	private final int binding;
+	private final int size;
+	
+	private ArrayList<ShaderUniformData> members;
+	private int[] offsets;
+	private int[] writtenVersions; // Compared on every draw, so kept unboxed
+	private boolean written;
+	
+	/**
+	 * @param name the name of the block in the shaders
+	 * @param binding the uniform buffer binding point to use for the block
+	 * @param size the size of the block in bytes
+	 */
+	public UniformBlock(String name, int binding, int size) {
+		this.name = name;
+		this.binding = binding;
+		this.size = size;
+		
+		members = new ArrayList<>();
+		offsets = new int[0];
+		writtenVersions = new int[0];
+	}
+	
+	/**
+	 * Adds a member to the block
+	 * @param data the stored value
+	 * @param offset the std140 offset of the member in bytes
+	 */
+	public void add(ShaderUniformData data, int offset) {
+		members.add(data);
+		offsets = Arrays.copyOf(offsets, members.size());
+		offsets[members.size() - 1] = offset;
+		writtenVersions = Arrays.copyOf(writtenVersions, members.size());
+		written = false;
+	}
+	
+	public int getBinding() {
+		return binding;
+	}
+	
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * Connects the block to its binding point in a newly linked program
+	 * @param gl
+	 * @param shaderProgram the OpenGL handle of the program
+	 */
+	public void link(GL3 gl, int shaderProgram) {
+		int index = gl.glGetUniformBlockIndex(shaderProgram, name);
+		if (index != GL3.GL_INVALID_INDEX) {
+			gl.glUniformBlockBinding(shaderProgram, index, binding);
+		}
+	}
+	
+	/**
+	 * @return whether any member has changed since the block was last written
+	 */
+	public boolean hasChanged() {
+		if (!written) return true;
+		for (int i=0; i<members.size(); i++) {
+			if (members.get(i).getVersion() != writtenVersions[i]) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Writes every member of the block
+	 * @param buffer the buffer to write to, in native byte order
+	 * @param base the position in bytes of the start of the block
+	 */
+	public void write(ByteBuffer buffer, int base) {
+		for (int i=0; i<members.size(); i++) {
+			ShaderUniformData member = members.get(i);
+			member.addToBlock(buffer, base + offsets[i]);
+			writtenVersions[i] = member.getVersion();
+		}
+		written = true;
+	}
+}
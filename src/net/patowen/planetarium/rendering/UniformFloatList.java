@@ -1,13 +1,9 @@
 package net.patowen.planetarium.rendering;
 
 
-import java.nio.Buffer;
-import java.nio.FloatBuffer;
+import java.nio.ByteBuffer;
 
-import com.jogamp.common.nio.Buffers;
-import com.jogamp.opengl.GLUniformData;
-
-public class UniformFloatList implements ShaderUniformData {
+public class UniformFloatList extends ShaderUniformData {
 	private int rows, cols;
 	public float[] list;
 	
@@ -25,18 +21,19 @@ public class UniformFloatList implements ShaderUniformData {
 		this(rows, 1, 1);
 	}
 	
-	public Buffer createBuffer() {
-		return Buffers.newDirectFloatBuffer(list.length);
-	}
-	
-	public void addToBuffer(Buffer buf) {
-		((FloatBuffer)buf).put(list);
-	}
-	
-	public GLUniformData getGLUniformData(String name, Buffer buffer) {
-		if (cols == 1)
-			return new GLUniformData(name, rows, (FloatBuffer)buffer);
-		else
-			return new GLUniformData(name, rows, cols, (FloatBuffer)buffer);
+	public void addToBlock(ByteBuffer buf, int offset) {
+		if (list.length == rows) {
+			for (int i=0; i<rows; i++) {
+				buf.putFloat(offset + 4*i, list[i]);
+			}
+			return;
+		}
+		
+		// Columns of matrices and elements of arrays are each padded to a vec4
+		for (int col=0; col<list.length/rows; col++) {
+			for (int i=0; i<rows; i++) {
+				buf.putFloat(offset + 16*col + 4*i, list[col*rows + i]);
+			}
+		}
 	}
 }
@@ -0,0 +1,76 @@
+package net.patowen.planetarium.rendering;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL3;
+
+/**
+ * Streams uniform blocks through one large buffer object. Each upload goes to the next free
+ * aligned range of the buffer and is bound to the block's binding point, so earlier ranges
+ * that queued draws still read are never overwritten. When the buffer is full, it is orphaned
+ * so that the driver can hand out new storage instead of waiting for those draws to finish.
+ * @author Patrick Owen
+ */
+public class UniformRing {
+	private int buffer;
+	private int capacity;
+	private int alignment;
+	private int offset;
+	private int generation;
+	
+	private ByteBuffer staging;
+	
+	/**
+	 * @param gl
+	 * @param capacity the size of the buffer in bytes
+	 * @param maxBlockSize the size of the largest block that will be uploaded
+	 */
+	public UniformRing(GL3 gl, int capacity, int maxBlockSize) {
+		this.capacity = capacity;
+		
+		IntBuffer result = Buffers.newDirectIntBuffer(1);
+		gl.glGetIntegerv(GL3.GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT, result);
+		alignment = Math.max(16, result.get(0));
+		
+		gl.glGenBuffers(1, result);
+		buffer = result.get(0);
+		gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, buffer);
+		gl.glBufferData(GL3.GL_UNIFORM_BUFFER, capacity, null, GL3.GL_STREAM_DRAW);
+		
+		staging = Buffers.newDirectByteBuffer(maxBlockSize);
+		offset = 0;
+	}
+	
+	/**
+	 * Returns a number that changes whenever the buffer is orphaned. Blocks uploaded before
+	 * the change are no longer available and need to be uploaded again before they are used.
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Writes the block into the next free range of the buffer and binds that range to the
+	 * block's binding point
+	 * @param gl
+	 * @param block the block to upload
+	 */
+	public void upload(GL3 gl, UniformBlock block) {
+		int size = block.getSize();
+		if (offset + size > capacity) {
+			gl.glBufferData(GL3.GL_UNIFORM_BUFFER, capacity, null, GL3.GL_STREAM_DRAW);
+			offset = 0;
+			generation++;
+		}
+		
+		staging.clear();
+		block.write(staging, 0);
+		staging.limit(size);
+		gl.glBufferSubData(GL3.GL_UNIFORM_BUFFER, offset, size, staging);
+		gl.glBindBufferRange(GL3.GL_UNIFORM_BUFFER, block.getBinding(), buffer, offset, size);
+		
+		offset += (size + alignment - 1) / alignment * alignment;
+	}
+}
@@ -1,34 +1,25 @@
 package net.patowen.planetarium.rendering;
 
 
-import java.nio.Buffer;
-import java.nio.FloatBuffer;
-
-import com.jogamp.common.nio.Buffers;
-import com.jogamp.opengl.GLUniformData;
+import java.nio.ByteBuffer;
 
 import net.patowen.planetarium.math.Transform;
 
-public class UniformTransform implements ShaderUniformData {
+public class UniformTransform extends ShaderUniformData {
 	public Transform transform;
 	
 	public UniformTransform(Transform initialTransform) {
 		transform = initialTransform;
 	}
 	
-	public Buffer createBuffer() {
-		return Buffers.newDirectFloatBuffer(16);
-	}
-	
-	public void addToBuffer(Buffer buf) {
-		((FloatBuffer)buf).put(new float[] {
-				(float)transform.x.x, (float)transform.x.y, (float)transform.x.z, 0.0f,
-				(float)transform.y.x, (float)transform.y.y, (float)transform.y.z, 0.0f,
-				(float)transform.z.x, (float)transform.z.y, (float)transform.z.z, 0.0f,
-				(float)transform.w.x, (float)transform.w.y, (float)transform.w.z, 1.0f});
-	}
-	
-	public GLUniformData getGLUniformData(String name, Buffer buffer) {
-		return new GLUniformData(name, 4, 4, (FloatBuffer)buffer);
+	public void addToBlock(ByteBuffer buf, int offset) {
+		buf.putFloat(offset, (float)transform.x.x).putFloat(offset + 4, (float)transform.x.y)
+				.putFloat(offset + 8, (float)transform.x.z).putFloat(offset + 12, 0.0f);
+		buf.putFloat(offset + 16, (float)transform.y.x).putFloat(offset + 20, (float)transform.y.y)
+				.putFloat(offset + 24, (float)transform.y.z).putFloat(offset + 28, 0.0f);
+		buf.putFloat(offset + 32, (float)transform.z.x).putFloat(offset + 36, (float)transform.z.y)
+				.putFloat(offset + 40, (float)transform.z.z).putFloat(offset + 44, 0.0f);
+		buf.putFloat(offset + 48, (float)transform.w.x).putFloat(offset + 52, (float)transform.w.y)
+				.putFloat(offset + 56, (float)transform.w.z).putFloat(offset + 60, 1.0f);
 	}
 }
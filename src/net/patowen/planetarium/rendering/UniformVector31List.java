@@ -1,15 +1,11 @@
 package net.patowen.planetarium.rendering;
 
 
-import java.nio.Buffer;
-import java.nio.FloatBuffer;
-
-import com.jogamp.common.nio.Buffers;
-import com.jogamp.opengl.GLUniformData;
+import java.nio.ByteBuffer;
 
 import net.patowen.planetarium.math.Vector3;
 
-public class UniformVector31List implements ShaderUniformData {
+public class UniformVector31List extends ShaderUniformData {
 	public Vector3[] vectors;
 	
 	public UniformVector31List(int size) {
@@ -20,18 +16,12 @@ public class UniformVector31List implements ShaderUniformData {
 		}
 	}
 	
-	public Buffer createBuffer() {
-		return Buffers.newDirectFloatBuffer(3*vectors.length);
-	}
-	
-	public void addToBuffer(Buffer buf) {
-		for (Vector3 vector : vectors) {
-			((FloatBuffer)buf).put(new float[] {
-					(float)vector.x, (float)vector.y, (float)vector.z });
+	public void addToBlock(ByteBuffer buf, int offset) {
+		// Each element of the array is padded to a vec4
+		for (int i=0; i<vectors.length; i++) {
+			Vector3 vector = vectors[i];
+			buf.putFloat(offset + 16*i, (float)vector.x).putFloat(offset + 16*i + 4, (float)vector.y)
+					.putFloat(offset + 16*i + 8, (float)vector.z);
 		}
 	}
-	
-	public GLUniformData getGLUniformData(String name, Buffer buffer) {
-		return new GLUniformData(name, 3, (FloatBuffer)buffer); // TODO: Don't recreate every frame
-	}
 }
@@ -9,20 +9,28 @@ in vec3 vertex;
 in vec3 normal;
 in vec3 tex_coord;
 
-uniform mat4 transform;
-
-//Lighting
-uniform vec3 light_ambient;
-uniform vec3 light_position[NUM_LIGHTS];
-uniform vec3 light_diffuse[NUM_LIGHTS];
-
-//Material
-uniform vec3 material_ambient;
-uniform vec3 material_diffuse;
-uniform vec3 material_emission;
+layout(std140) uniform PerFrame {
+	mat4 perspective;
+	
+	//Lighting
+	vec3 light_ambient;
+	vec3 light_diffuse[NUM_LIGHTS];
+	
+	//Noise
+	vec2 noise_displacement;
+};
 
-//Noise
-uniform vec2 noise_displacement;
+layout(std140) uniform PerObject {
+	mat4 transform;
+	
+	//Lighting, relative to the object
+	vec3 light_position[NUM_LIGHTS];
+	
+	//Material
+	vec3 material_ambient;
+	vec3 material_diffuse;
+	vec3 material_emission;
+};
 
 out vec4 fragColor;
 
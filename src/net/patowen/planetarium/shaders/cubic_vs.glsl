@@ -1,7 +1,29 @@
 #version 150
 
-uniform mat4 transform;
-uniform mat4 perspective;
+#define NUM_LIGHTS 1
+
+layout(std140) uniform PerFrame {
+	mat4 perspective;
+	
+	//Lighting
+	vec3 light_ambient;
+	vec3 light_diffuse[NUM_LIGHTS];
+	
+	//Noise
+	vec2 noise_displacement;
+};
+
+layout(std140) uniform PerObject {
+	mat4 transform;
+	
+	//Lighting, relative to the object
+	vec3 light_position[NUM_LIGHTS];
+	
+	//Material
+	vec3 material_ambient;
+	vec3 material_diffuse;
+	vec3 material_emission;
+};
 
 in vec3 vertex_in;
 in vec3 normal_in;
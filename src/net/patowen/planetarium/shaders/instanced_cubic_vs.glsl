@@ -0,0 +1,48 @@
+#version 150
+
+#define NUM_LIGHTS 1
+
+layout(std140) uniform PerFrame {
+	mat4 perspective;
+	
+	//Lighting
+	vec3 light_ambient;
+	vec3 light_diffuse[NUM_LIGHTS];
+	
+	//Noise
+	vec2 noise_displacement;
+};
+
+layout(std140) uniform PerObject {
+	mat4 transform;
+	
+	//Lighting, relative to the object
+	vec3 light_position[NUM_LIGHTS];
+	
+	//Material
+	vec3 material_ambient;
+	vec3 material_diffuse;
+	vec3 material_emission;
+};
+
+in vec3 vertex_in;
+in vec3 normal_in;
+in vec3 tex_coord_in;
+
+//Per instance, relative to the object
+in mat4 instance_transform;
+in vec4 instance_color;
+
+out vec3 vertex;
+out vec3 normal;
+out vec3 tex_coord;
+out vec3 color;
+
+void main() {
+	vec4 position = instance_transform*vec4(vertex_in, 1.0);
+	vertex = position.xyz;
+	tex_coord = tex_coord_in;
+	normal = mat3(instance_transform)*normal_in;
+	color = instance_color.rgb;
+	gl_Position = perspective*transform*position;
+}